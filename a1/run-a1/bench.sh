@@ -0,0 +1,8 @@
+#!/usr/bin/env bash
+# Compiles a1 with its benchmarks and runs them: ./bench.sh [codec] [loopback] [receivers]
+set -e
+cd "$(dirname "$0")/.."
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+javac -d "$out" $(find src test-src/a1/bench -name '*.java')
+java -cp "$out" a1.bench.Benchmarks "$@"
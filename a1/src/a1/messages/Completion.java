@@ -0,0 +1,64 @@
+package a1.messages;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * One step of the completion all-reduce: for every process, the number of payloads addressed to it.
+ * On the way up the tree the counts cover the sender's subtree; on the way down, marked as the total,
+ * they cover every process.
+ */
+public class Completion extends Message {
+
+    private boolean total = false;
+    private long[] counts = new long[0];
+
+    public Completion()
+    {
+        super.mType = MessageType.COMPLETION;
+    }
+
+    /**
+     * @param total {@code true} if the counts cover every process, {@code false} if only the sender's subtree
+     * @param counts number of payloads addressed to each process, indexed as in the Collator's address list;
+     * the array is not copied
+     */
+    public Completion(boolean total, long[] counts)
+    {
+        this();
+        this.total = total;
+        this.counts = counts;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeBoolean(total);
+        out.writeInt(counts.length);
+        for(long c: counts)
+            out.writeLong(c);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        this.total = in.readBoolean();
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("Negative process count " + length + " in completion");
+        this.counts = new long[length];
+        for(int i = 0; i < length; i++)
+            this.counts[i] = in.readLong();
+    }
+
+    public boolean isTotal()
+    {
+        return total;
+    }
+
+    public long[] getCounts()
+    {
+        return counts;
+    }
+}
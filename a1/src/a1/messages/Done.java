@@ -1,8 +1,8 @@
 package a1.messages;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 public class Done extends Message {
 
@@ -12,13 +12,13 @@ public class Done extends Message {
     }
 
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException
+    public void writeTo(DataOutput out) throws IOException
     {
 
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+    public void readFrom(DataInput in) throws IOException
     {
 
     }
@@ -1,25 +1,61 @@
 package a1.messages;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
+/**
+ * Tells a process to start sending. It also carries the process's index in the Collator's address list and
+ * the fanouts of the trees built over that list: the summary tree, where 0 means that every process reports
+ * to the Collator, and the completion tree, where 0 means that every process sends DONE to every peer.
+ */
 public class Initiate extends Message {
 
+    private int position = 0;
+    private int summaryFanout = 0;
+    private int doneFanout = 0;
+
     public Initiate()
     {
         super.mType = MessageType.INITIATE;
     }
 
-    @Override
-    public void writeExternal(ObjectOutput out) throws IOException
+    public Initiate(int position, int summaryFanout, int doneFanout)
     {
+        this();
+        this.position = position;
+        this.summaryFanout = summaryFanout;
+        this.doneFanout = doneFanout;
+    }
 
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(position);
+        out.writeInt(summaryFanout);
+        out.writeInt(doneFanout);
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+    public void readFrom(DataInput in) throws IOException
     {
+        this.position = in.readInt();
+        this.summaryFanout = in.readInt();
+        this.doneFanout = in.readInt();
+    }
 
+    public int getPosition()
+    {
+        return position;
+    }
+
+    public int getSummaryFanout()
+    {
+        return summaryFanout;
+    }
+
+    public int getDoneFanout()
+    {
+        return doneFanout;
     }
 }
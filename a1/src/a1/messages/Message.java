@@ -1,10 +1,32 @@
 package a1.messages;
 
-public abstract class Message implements java.io.Externalizable {
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Base class for all messages. A message only writes its own fields; the type tag that precedes
+ * them on the wire is handled by {@link MessageCodec}.
+ */
+public abstract class Message {
     protected  MessageType mType;
 
     public MessageType getType()
     {
         return mType;
     }
+
+    /**
+     * Writes the fields of this message to {@code out}
+     * @param out destination of the encoded fields
+     * @throws IOException if writing to {@code out} fails
+     */
+    public abstract void writeTo(DataOutput out) throws IOException;
+
+    /**
+     * Reads the fields of this message from {@code in}, in the order written by {@link #writeTo(DataOutput)}
+     * @param in source of the encoded fields
+     * @throws IOException if reading from {@code in} fails
+     */
+    public abstract void readFrom(DataInput in) throws IOException;
 }
@@ -0,0 +1,150 @@
+package a1.messages;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes messages in a compact binary form: a one-byte {@link MessageType} tag followed by the
+ * fields of the message, as written by {@link Message#writeTo(DataOutput)}. Every message type has
+ * a fixed layout except {@link PayloadBatch}, {@link PaddedPayload},
+ * {@link Stats} and {@link Completion}, which carry their own lengths.
+ */
+public final class MessageCodec
+{
+    private MessageCodec() {}
+
+    /**
+     * Writes {@code m} to {@code out}
+     * @param m message to be encoded
+     * @param out destination of the encoded message
+     * @throws IOException if writing to {@code out} fails
+     */
+    public static void write(Message m, DataOutput out) throws IOException
+    {
+        out.writeByte(m.getType().getTag());
+        m.writeTo(out);
+    }
+
+    /**
+     * Writes a {@link Payload} frame carrying {@code data} without creating the message. The bytes written are
+     * the same as for {@code write(new Payload(data), out)}.
+     * @param data value to be sent
+     * @param out destination of the encoded message
+     * @throws IOException if writing to {@code out} fails
+     */
+    public static void writePayload(int data, DataOutput out) throws IOException
+    {
+        out.writeByte(MessageType.PAYLOAD.getTag());
+        out.writeInt(data);
+    }
+
+    /**
+     * Writes a {@link PaddedPayload} frame without creating the message. The bytes written are the same as for
+     * {@code write(new PaddedPayload(data, padding), out)}.
+     * @param data value to be sent
+     * @param padding number of filler bytes after the value
+     * @param out destination of the encoded message
+     * @throws IOException if writing to {@code out} fails
+     * @throws IllegalArgumentException if {@code padding} is negative
+     */
+    public static void writePaddedPayload(int data, int padding, DataOutput out) throws IOException
+    {
+        if (padding < 0)
+            throw new IllegalArgumentException("Padding cannot be negative");
+        out.writeByte(MessageType.PADDED_PAYLOAD.getTag());
+        out.writeInt(data);
+        PaddedPayload.writePadding(padding, out);
+    }
+
+    /**
+     * Reads the next message from {@code in}
+     * @param in source of the encoded message
+     * @return the decoded message
+     * @throws IOException if reading from {@code in} fails, or if the tag read does not identify a message type
+     */
+    public static Message read(DataInput in) throws IOException
+    {
+        return read(in, null);
+    }
+
+    /**
+     * Reads the next frame from {@code in}. Payload frames are decoded straight into {@code handler} and no
+     * message is created for them; any other frame is decoded as by {@link #read(DataInput)}.
+     * @param in source of the encoded message
+     * @param handler receiver of payload values, or {@code null} to decode payloads into messages as well
+     * @return the decoded message, or {@code null} if the frame carried payloads and was passed to {@code handler}
+     * @throws IOException if reading from {@code in} fails, or if the tag read does not identify a message type
+     */
+    public static Message read(DataInput in, PayloadHandler handler) throws IOException
+    {
+        byte tag = in.readByte();
+        if (handler != null)
+        {
+            switch (typeOf(tag))
+            {
+                case PAYLOAD:
+                    handler.onPayload(in.readInt());
+                    return null;
+                case PADDED_PAYLOAD:
+                    int data = in.readInt();
+                    PaddedPayload.skipPadding(in);
+                    handler.onPayload(data);
+                    return null;
+                case PAYLOAD_BATCH:
+                    int count = PayloadBatch.readCount(in);
+                    long sum = 0;
+                    for (int i = 0; i < count; i++)
+                        sum += in.readInt();
+                    handler.onPayloads(count, sum);
+                    return null;
+                default:
+                    break;
+            }
+        }
+        Message m = newMessage(tag);
+        m.readFrom(in);
+        return m;
+    }
+
+    private static MessageType typeOf(byte tag) throws IOException
+    {
+        try
+        {
+            return MessageType.fromTag(tag);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static Message newMessage(byte tag) throws IOException
+    {
+        MessageType type = typeOf(tag);
+
+        switch (type)
+        {
+            case PAYLOAD:
+                return new Payload();
+            case READY:
+                return new Ready();
+            case INITIATE:
+                return new Initiate();
+            case DONE:
+                return new Done();
+            case SUMMARY:
+                return new Summary();
+            case PAYLOAD_BATCH:
+                return new PayloadBatch();
+            case PADDED_PAYLOAD:
+                return new PaddedPayload();
+            case STATS:
+                return new Stats();
+            case COMPLETION:
+                return new Completion();
+            default:
+                throw new IOException("No decoder for message type " + type);
+        }
+    }
+}
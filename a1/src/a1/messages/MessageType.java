@@ -5,5 +5,33 @@ public enum MessageType {
     READY,
     INITIATE,
     DONE,
-    SUMMARY
+    SUMMARY,
+    PAYLOAD_BATCH,
+    PADDED_PAYLOAD,
+    STATS,
+    COMPLETION;
+
+    private static final MessageType[] TAGS = values();
+
+    /**
+     * Returns the one-byte tag that identifies this type on the wire
+     * @return tag of this message type
+     */
+    public byte getTag()
+    {
+        return (byte) ordinal();
+    }
+
+    /**
+     * Looks up the message type identified by {@code tag}
+     * @param tag tag read from the wire
+     * @return the message type identified by {@code tag}
+     * @throws IllegalArgumentException if {@code tag} does not identify any message type
+     */
+    public static MessageType fromTag(byte tag)
+    {
+        if (tag < 0 || tag >= TAGS.length)
+            throw new IllegalArgumentException("Unknown message tag " + tag);
+        return TAGS[tag];
+    }
 }
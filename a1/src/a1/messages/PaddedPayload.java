@@ -0,0 +1,67 @@
+package a1.messages;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A {@link Payload} followed by a number of filler bytes, used to generate traffic with larger messages.
+ * The filler carries no information: it is written as zeros and skipped when read.
+ */
+public class PaddedPayload extends Payload {
+
+    private static final byte[] FILLER = new byte[4096];
+
+    private int padding = 0;
+
+    public PaddedPayload()
+    {
+        super.mType = MessageType.PADDED_PAYLOAD;
+    }
+
+    public PaddedPayload(int data, int padding)
+    {
+        super(data);
+        if (padding < 0)
+            throw new IllegalArgumentException("Padding cannot be negative");
+        super.mType = MessageType.PADDED_PAYLOAD;
+        this.padding = padding;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        super.writeTo(out);
+        writePadding(padding, out);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        super.readFrom(in);
+        this.padding = skipPadding(in);
+    }
+
+    static void writePadding(int padding, DataOutput out) throws IOException
+    {
+        out.writeInt(padding);
+        for(int left = padding; left > 0; left -= FILLER.length)
+            out.write(FILLER, 0, Math.min(left, FILLER.length));
+    }
+
+    static int skipPadding(DataInput in) throws IOException
+    {
+        int padding = in.readInt();
+        if (padding < 0)
+            throw new IOException("Negative padding " + padding + " in payload");
+        if (in.skipBytes(padding) < padding)
+            throw new EOFException("Stream ended within the padding of a payload");
+        return padding;
+    }
+
+    public int getPadding()
+    {
+        return padding;
+    }
+}
@@ -1,8 +1,8 @@
 package a1.messages;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
 public class Payload extends Message {
 
@@ -15,17 +15,18 @@ public class Payload extends Message {
 
     public Payload(int data)
     {
+        this();
         this.data = data;
     }
 
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException
+    public void writeTo(DataOutput out) throws IOException
     {
         out.writeInt(data);
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+    public void readFrom(DataInput in) throws IOException
     {
         this.data = in.readInt();
     }
@@ -0,0 +1,95 @@
+package a1.messages;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Carries several payload values in one frame: a count followed by that many values
+ */
+public class PayloadBatch extends Message {
+
+    /**
+     * Largest number of values a batch may carry; a frame claiming more is rejected as corrupt
+     */
+    public static final int MAX_COUNT = 65536;
+
+    private int[] data = new int[0];
+    private long sum = 0;
+
+    public PayloadBatch()
+    {
+        super.mType = MessageType.PAYLOAD_BATCH;
+    }
+
+    /**
+     * Creates a batch of the first {@code count} values in {@code data}. The values are copied.
+     * @param data array holding the values
+     * @param count number of values to take from the start of {@code data}
+     * @throws IllegalArgumentException if {@code count} exceeds {@link #MAX_COUNT}
+     */
+    public PayloadBatch(int[] data, int count)
+    {
+        this();
+        if (count > MAX_COUNT)
+            throw new IllegalArgumentException("Batch of " + count + " values exceeds " + MAX_COUNT);
+        this.data = new int[count];
+        System.arraycopy(data, 0, this.data, 0, count);
+        this.sum = sum(this.data);
+    }
+
+    private static long sum(int[] data)
+    {
+        long s = 0;
+        for(int d: data)
+            s += d;
+        return s;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(data.length);
+        for(int d: data)
+            out.writeInt(d);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        int count = readCount(in);
+        this.data = new int[count];
+        for(int i = 0; i < count; i++)
+            this.data[i] = in.readInt();
+        this.sum = sum(this.data);
+    }
+
+    static int readCount(DataInput in) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Negative payload count " + count + " in batch");
+        if (count > MAX_COUNT)
+            throw new IOException("Payload count " + count + " in batch exceeds " + MAX_COUNT);
+        return count;
+    }
+
+    public int getCount()
+    {
+        return data.length;
+    }
+
+    public int getData(int i)
+    {
+        return data[i];
+    }
+
+    /**
+     * Returns the sum of all the values in the batch
+     * @return sum of all the values in the batch
+     */
+    public long getSum()
+    {
+        return sum;
+    }
+}
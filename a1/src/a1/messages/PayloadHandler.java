@@ -0,0 +1,22 @@
+package a1.messages;
+
+/**
+ * Receives the values of payload frames as {@link MessageCodec#read(java.io.DataInput, PayloadHandler)} decodes
+ * them, so that the receive path can update its accumulators without a {@link Payload} or {@link PayloadBatch}
+ * being created for every frame
+ */
+public interface PayloadHandler
+{
+    /**
+     * Called for every {@link MessageType#PAYLOAD} and {@link MessageType#PADDED_PAYLOAD} frame
+     * @param data value carried by the frame
+     */
+    void onPayload(int data);
+
+    /**
+     * Called for every {@link MessageType#PAYLOAD_BATCH} frame
+     * @param count number of values in the batch
+     * @param sum sum of the values in the batch
+     */
+    void onPayloads(int count, long sum);
+}
@@ -0,0 +1,157 @@
+package a1.messages;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Traffic seen by one process over the last reporting interval, sent periodically to the Collator.
+ * The process is identified by its listening port, since several processes may share a host.
+ * Latencies are the time taken to write and flush a frame to a peer, in microseconds.
+ */
+public class Stats extends Message {
+
+    private int port = 0;
+    private int intervalMillis = 0;
+    private long framesSent = 0;
+    private long bytesSent = 0;
+    private long framesReceived = 0;
+    private long bytesReceived = 0;
+    private int outboundConnections = 0;
+    private int inboundConnections = 0;
+    private long latencyP50Micros = 0;
+    private long latencyP99Micros = 0;
+    private long latencyMaxMicros = 0;
+    private String slowestPeer = "";
+    private long slowestPeerP99Micros = 0;
+
+    public Stats()
+    {
+        super.mType = MessageType.STATS;
+    }
+
+    public Stats(int port, int intervalMillis, long framesSent, long bytesSent, long framesReceived, long bytesReceived,
+                 int outboundConnections, int inboundConnections, long latencyP50Micros, long latencyP99Micros,
+                 long latencyMaxMicros, String slowestPeer, long slowestPeerP99Micros)
+    {
+        this();
+        this.port = port;
+        this.intervalMillis = intervalMillis;
+        this.framesSent = framesSent;
+        this.bytesSent = bytesSent;
+        this.framesReceived = framesReceived;
+        this.bytesReceived = bytesReceived;
+        this.outboundConnections = outboundConnections;
+        this.inboundConnections = inboundConnections;
+        this.latencyP50Micros = latencyP50Micros;
+        this.latencyP99Micros = latencyP99Micros;
+        this.latencyMaxMicros = latencyMaxMicros;
+        this.slowestPeer = slowestPeer;
+        this.slowestPeerP99Micros = slowestPeerP99Micros;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(port);
+        out.writeInt(intervalMillis);
+        out.writeLong(framesSent);
+        out.writeLong(bytesSent);
+        out.writeLong(framesReceived);
+        out.writeLong(bytesReceived);
+        out.writeInt(outboundConnections);
+        out.writeInt(inboundConnections);
+        out.writeLong(latencyP50Micros);
+        out.writeLong(latencyP99Micros);
+        out.writeLong(latencyMaxMicros);
+        out.writeUTF(slowestPeer);
+        out.writeLong(slowestPeerP99Micros);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException
+    {
+        this.port = in.readInt();
+        this.intervalMillis = in.readInt();
+        this.framesSent = in.readLong();
+        this.bytesSent = in.readLong();
+        this.framesReceived = in.readLong();
+        this.bytesReceived = in.readLong();
+        this.outboundConnections = in.readInt();
+        this.inboundConnections = in.readInt();
+        this.latencyP50Micros = in.readLong();
+        this.latencyP99Micros = in.readLong();
+        this.latencyMaxMicros = in.readLong();
+        this.slowestPeer = in.readUTF();
+        this.slowestPeerP99Micros = in.readLong();
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public int getIntervalMillis()
+    {
+        return intervalMillis;
+    }
+
+    public long getFramesSent()
+    {
+        return framesSent;
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+
+    public long getFramesReceived()
+    {
+        return framesReceived;
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived;
+    }
+
+    public int getOutboundConnections()
+    {
+        return outboundConnections;
+    }
+
+    public int getInboundConnections()
+    {
+        return inboundConnections;
+    }
+
+    public long getLatencyP50Micros()
+    {
+        return latencyP50Micros;
+    }
+
+    public long getLatencyP99Micros()
+    {
+        return latencyP99Micros;
+    }
+
+    public long getLatencyMaxMicros()
+    {
+        return latencyMaxMicros;
+    }
+
+    /**
+     * Returns the peer with the highest 99th percentile send latency over the interval
+     * @return {@code host:port} of the slowest peer, or an empty string if nothing was sent
+     */
+    public String getSlowestPeer()
+    {
+        return slowestPeer;
+    }
+
+    public long getSlowestPeerP99Micros()
+    {
+        return slowestPeerP99Micros;
+    }
+}
@@ -1,11 +1,17 @@
 package a1.messages;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
+/**
+ * Totals of a subtree of processes: the process identified by {@code port} and every process that reported
+ * to it. Without a summary tree each process reports alone, so {@code processes} is 1.
+ */
 public class Summary extends Message {
 
+    private int port = 0;
+    private int processes = 0;
     private int sent = 0;
     private int received = 0;
     private long sentSummation = 0;
@@ -16,8 +22,11 @@ public class Summary extends Message {
         super.mType = MessageType.SUMMARY;
     }
 
-    public Summary(int sent, int received, long sentSummation, long receivedSummation)
+    public Summary(int port, int processes, int sent, int received, long sentSummation, long receivedSummation)
     {
+        this();
+        this.port = port;
+        this.processes = processes;
         this.sent = sent;
         this.received = received;
         this.sentSummation = sentSummation;
@@ -25,8 +34,10 @@ public class Summary extends Message {
     }
 
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException
+    public void writeTo(DataOutput out) throws IOException
     {
+        out.writeInt(port);
+        out.writeInt(processes);
         out.writeInt(sent);
         out.writeInt(received);
         out.writeLong(sentSummation);
@@ -34,14 +45,26 @@ public class Summary extends Message {
     }
 
     @Override
-    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+    public void readFrom(DataInput in) throws IOException
     {
+        this.port = in.readInt();
+        this.processes = in.readInt();
         this.sent = in.readInt();
         this.received = in.readInt();
         this.sentSummation = in.readLong();
         this.receivedSummation = in.readLong();
     }
 
+    public int getPort()
+    {
+        return port;
+    }
+
+    public int getProcesses()
+    {
+        return processes;
+    }
+
     public int getSent()
     {
         return sent;
@@ -7,21 +7,68 @@ import a1.util.*;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.*;
 
 public final class Collator {
 
     private static final Logger LOGGER = Logger.getLogger(Collator.class.getName());
-    private static int port = -1;
-    private static List<InetSocketAddress> addressList = null;
-    private static List<Summary> summaryList = null;
-    private static List<Boolean> ready = null;
+    private static final int MAX_HANDLER_THREADS = 16;
+    private final int port;
+    private final List<InetSocketAddress> addressList;
+    private final PeerIndex peerIndex;
+    private final List<Summary> summaryList;
+    private final List<Boolean> ready;
+    private boolean initiated = false;
+    private boolean finished = false;
+    private final int fanout;
+    private final int doneFanout;
+    private final int summaryRoots;
+    private final List<Stats> statsList;
+    private boolean statsUpdated = false;
+    private final int statsIntervalMillis;
+    private ScheduledExecutorService statsPrinter;
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile Summary total;
 
-    private static CollatorListener listener;
+    private final Listener listener;
 
-    private Collator() {}
+    /**
+     * Creates a Collator and binds its listener, without starting it
+     * @param port port to listen on
+     * @param addresses addresses of every process
+     * @param options options as returned by {@link ConfigReader#readOptions(String)}
+     * @throws IllegalArgumentException if any of the options has an invalid value
+     * @throws IllegalStateException if the listener cannot bind to {@code port}
+     */
+    public Collator(int port, List<InetSocketAddress> addresses, Map<String, String> options)
+    {
+        this.statsIntervalMillis = ConfigReader.getIntOption(options, Process.STATS_INTERVAL_OPTION,
+                Process.DEFAULT_STATS_INTERVAL_MILLIS, 0, 3600000);
+        this.fanout = ConfigReader.getIntOption(options, SummaryTree.FANOUT_OPTION, 0, 0, 65536);
+        this.doneFanout = ConfigReader.getIntOption(options, CompletionTree.FANOUT_OPTION,
+                CompletionTree.DEFAULT_FANOUT, 0, 65536);
+
+        this.port = port;
+        this.addressList = Collections.unmodifiableList(new ArrayList<>(addresses));
+        this.peerIndex = new PeerIndex(this.addressList);
+        this.summaryRoots = SummaryTree.rootCount(fanout, this.addressList.size());
+        // Default initialize to null for consistent ordering with addressList
+        this.ready = new ArrayList<>(Collections.nCopies(this.addressList.size(), false));
+        this.summaryList = new ArrayList<>(Collections.nCopies(this.addressList.size(), (Summary) null));
+        this.statsList = new ArrayList<>(Collections.nCopies(this.addressList.size(), (Stats) null));
+
+        if (SelectorListener.isConfigured(options))
+            this.listener = new CollatorSelectorListener(port);
+        else
+            this.listener = new CollatorListener(port);
+    }
 
-    private static boolean allReady()
+    private boolean allReady()
     {
         synchronized (ready)
         {
@@ -32,86 +79,215 @@ public final class Collator {
         return true;
     }
 
-    private static boolean allSummarized()
+    private boolean allSummarized()
     {
         synchronized(summaryList)
         {
-            for(Summary m: summaryList)
-                if (m == null)
+            // Only the roots of the summary tree report here, and they are the first processes in the list
+            for(int i=0; i<summaryRoots; i++)
+                if (summaryList.get(i) == null)
                     return false;
         }
         return true;
     }
 
-    private enum VALIDATION_MODE {EXCLUDE_NONE, EXCLUDE_READY, EXCLUDE_SUMMARIZED};
+    private enum VALIDATION_MODE {EXCLUDE_NONE, EXCLUDE_READY};
 
-    private static int validateHost(InetAddress addr, VALIDATION_MODE mode)
+    private int validateHost(InetAddress addr, VALIDATION_MODE mode)
     {
-        String target = addr.getCanonicalHostName();
-        for(int i = 0; i < addressList.size(); i++)
+        for(int i: peerIndex.lookup(addr))
         {
             if (mode == VALIDATION_MODE.EXCLUDE_READY && ready.get(i))
                 continue;
-            else if (mode == VALIDATION_MODE.EXCLUDE_SUMMARIZED && summaryList.get(i) != null)
-                continue;
-            String cur = addressList.get(i).getHostString();
-            LOGGER.log(Level.FINEST, "Comparing target " + target + " against " + cur);
-            if (cur.equals(target))
-            {
-                return i;
-            }
+            return i;
         }
         return -1;
     }
 
-    private static void onReady(InetAddress source)
+    private void onReady(InetAddress source)
     {
-        int idx = validateHost(source, VALIDATION_MODE.EXCLUDE_READY);
-        if (idx >= 0)
+        int idx;
+        boolean initiate = false;
+        // Connections are handled concurrently, so the lookup, the update and the decision to initiate
+        // must happen together
+        synchronized (ready)
         {
-            synchronized (ready)
+            idx = validateHost(source, VALIDATION_MODE.EXCLUDE_READY);
+            if (idx >= 0)
             {
                 ready.set(idx, true);
-            }
-
-            if (allReady()) {
-                LOGGER.log(Level.INFO, "Initiating");
-                Sender.broadcast(new Initiate(), addressList);
+                if (!initiated && allReady())
+                    initiated = initiate = true;
             }
         }
-        else
-        {
+
+        if (idx < 0)
             LOGGER.log(Level.INFO, "READY message received from unrecognized source");
+        else if (initiate)
+            initiate();
+    }
+
+    /**
+     * Sends INITIATE to every process, telling each its index in the address list so it can find its place
+     * in the summary and completion trees
+     */
+    private void initiate()
+    {
+        LOGGER.log(Level.INFO, "Initiating");
+        for(int i=0; i<addressList.size(); i++)
+        {
+            Sender s = null;
+            try
+            {
+                s = new Sender(addressList.get(i));
+                s.send(new Initiate(i, fanout, doneFanout));
+            }
+            catch(IllegalStateException e)
+            {
+                LOGGER.log(Level.WARNING, e.getMessage());
+                throw e;
+            }
+            finally
+            {
+                if (s != null)
+                    s.close();
+            }
         }
     }
 
-    private static void onSummary(Summary m, InetAddress source)
+    private int summaryIndex(Summary m, InetAddress source)
     {
-        int idx = validateHost(source, VALIDATION_MODE.EXCLUDE_SUMMARIZED);
-        if (idx >= 0)
+        // Processes on the same host are told apart by the listening port they report
+        for(int i: peerIndex.lookup(source))
+            if (addressList.get(i).getPort() == m.getPort())
+                return i < summaryRoots && summaryList.get(i) == null ? i : -1;
+        return -1;
+    }
+
+    private void onSummary(Summary m, InetAddress source)
+    {
+        int idx;
+        boolean finish = false;
+        synchronized (summaryList)
         {
-            synchronized (summaryList)
+            idx = summaryIndex(m, source);
+            if (idx >= 0)
             {
                 summaryList.set(idx, m);
+                if (!finished && allSummarized())
+                    finished = finish = true;
             }
+        }
+
+        if (idx < 0)
+        {
+            LOGGER.log(Level.INFO, "SUMMARY message received from unrecognized source");
+        }
+        else if (finish)
+        {
+            if (statsPrinter != null)
+                statsPrinter.shutdownNow();
+            printSummary();
+            listener.close();
+            completed.countDown();
+        }
+    }
 
-            if(allSummarized())
+    private void onStats(Stats m, InetAddress source)
+    {
+        // Processes on the same host are told apart by the listening port they report
+        for(int i: peerIndex.lookup(source))
+        {
+            if (addressList.get(i).getPort() == m.getPort())
             {
-                printSummary();
-                listener.close();
+                synchronized (statsList)
+                {
+                    statsList.set(i, m);
+                    statsUpdated = true;
+                }
+                return;
             }
         }
+        LOGGER.log(Level.INFO, "STATS message received from unrecognized source");
+    }
+
+    /**
+     * Prints the most recent {@link Stats} of every process that has reported, as per-second rates,
+     * followed by the cluster totals. Nothing is printed if no process has reported since the last view.
+     */
+    private void printStats()
+    {
+        Stats[] latest;
+        synchronized (statsList)
+        {
+            if (!statsUpdated)
+                return;
+            statsUpdated = false;
+            latest = statsList.toArray(new Stats[0]);
+        }
+
+        String headerFormat = "%1$-35s %2$10s %3$10s %4$9s %5$9s %6$7s %7$8s %8$8s %9$8s  %10$s";
+        String rowFormat = "%1$-35s %2$10.0f %3$10.0f %4$9.2f %5$9.2f %6$7s %7$8d %8$8d %9$8d  %10$s";
+        System.out.println(String.format(headerFormat, "Stats", "Out fr/s", "In fr/s", "Out MB/s", "In MB/s",
+                "Conns", "p50 us", "p99 us", "max us", "Slowest peer (p99 us)"));
+
+        double framesOut = 0, framesIn = 0, bytesOut = 0, bytesIn = 0;
+        long worstP99 = 0;
+        for(int i=0; i<latest.length; i++)
+        {
+            Stats st = latest[i];
+            if (st == null)
+                continue;
+            double seconds = Math.max(1, st.getIntervalMillis()) / 1000.0;
+            framesOut += st.getFramesSent() / seconds;
+            framesIn += st.getFramesReceived() / seconds;
+            bytesOut += st.getBytesSent() / seconds;
+            bytesIn += st.getBytesReceived() / seconds;
+            worstP99 = Math.max(worstP99, st.getLatencyP99Micros());
+            System.out.println(String.format(rowFormat, addressList.get(i).getHostName() + ":" + addressList.get(i).getPort(),
+                    st.getFramesSent() / seconds, st.getFramesReceived() / seconds,
+                    st.getBytesSent() / seconds / 1e6, st.getBytesReceived() / seconds / 1e6,
+                    st.getOutboundConnections() + "/" + st.getInboundConnections(),
+                    st.getLatencyP50Micros(), st.getLatencyP99Micros(), st.getLatencyMaxMicros(),
+                    st.getSlowestPeer().isEmpty() ? "-" : st.getSlowestPeer() + " (" + st.getSlowestPeerP99Micros() + ")"));
+        }
+        System.out.println(String.format("%1$-35s %2$10.0f %3$10.0f %4$9.2f %5$9.2f %6$7s %7$8s %8$8d",
+                "Cluster", framesOut, framesIn, bytesOut / 1e6, bytesIn / 1e6, "", "", worstP99));
+    }
+
+    private void onMessage(Message m, InetAddress source)
+    {
+        LOGGER.log(Level.FINE, "Received a message");
+        LOGGER.log(Level.INFO, "Message type is " + m.getType());
+        switch (m.getType()) {
+            case READY:
+                this.onReady(source);
+                break;
+            case SUMMARY:
+                this.onSummary((Summary) m, source);
+                break;
+            case STATS:
+                this.onStats((Stats) m, source);
+                break;
+            default:
+                throw new UnsupportedOperationException("Invalid message received");
+        }
     }
 
-    private static void printSummary()
+    private void printSummary()
     {
-        int sent = 0, received = 0;
+        int sent = 0, received = 0, processes = 0;
         long sentSummation = 0, receivedSummation = 0;
         String formatString = "%1$-35s %2$8d %3$8d %4$16d %5$16d";
 
-        for(int i=0; i<Collator.summaryList.size(); i++)
+        for(int i=0; i<summaryRoots; i++)
         {
-            System.out.println(String.format(formatString, addressList.get(i).getHostName() + ":" + addressList.get(i).getPort(),
+            // A row covers the whole subtree rooted at the process when summaries are aggregated
+            String label = addressList.get(i).getHostName() + ":" + addressList.get(i).getPort();
+            if (summaryList.get(i).getProcesses() > 1)
+                label += " (+" + (summaryList.get(i).getProcesses() - 1) + ")";
+            processes += summaryList.get(i).getProcesses();
+            System.out.println(String.format(formatString, label,
                     summaryList.get(i).getSent(), summaryList.get(i).getReceived(),
                     summaryList.get(i).getSentSummation(), summaryList.get(i).getReceivedSummation()));
             sent += summaryList.get(i).getSent();
@@ -120,6 +296,9 @@ public final class Collator {
             receivedSummation += summaryList.get(i).getReceivedSummation();
         }
         System.out.println(String.format(formatString, "Sum", sent, received, sentSummation, receivedSummation));
+        total = new Summary(port, processes, sent, received, sentSummation, receivedSummation);
+        if (processes != addressList.size())
+            LOGGER.log(Level.WARNING, "Summaries cover " + processes + " of " + addressList.size() + " processes");
     }
 
     private static void printUsage()
@@ -127,86 +306,127 @@ public final class Collator {
         System.out.println("Usage: java Collator <PORT> <PATH_TO_CONFIG_FILE>");
     }
 
-    public static boolean parseArgs(String[] args)
+    /**
+     * Creates a Collator from its command line arguments
+     * @param args port and path to the config file
+     * @return the Collator, not yet started, or {@code null} if the arguments are invalid
+     */
+    public static Collator parseArgs(String[] args)
     {
-        int port = -1;
-        List<InetSocketAddress> addresses = null;
-
-        boolean success = false;
-
-        if (args.length == 2) {
-            try {
-                port = TokenParser.parseAsInt(args[0], 0, 65535);
-                File f = TokenParser.parseAsPath(args[1]);
-                addresses = ConfigReader.read(f.getPath(), false, true);
-                if (addresses != null)
-                    success = true;
-            }
-            catch(IllegalArgumentException e)
-            {
-                LOGGER.log(Level.SEVERE, e.toString(), e);
-                return false;
-            }
+        if (args.length != 2)
+            return null;
+
+        try {
+            int port = TokenParser.parseAsInt(args[0], 0, 65535);
+            File f = TokenParser.parseAsPath(args[1]);
+            List<InetSocketAddress> addresses = ConfigReader.read(f.getPath(), false, true);
+            Map<String, String> options = ConfigReader.readOptions(f.getPath());
+            if (addresses == null || options == null)
+                return null;
+
+            return new Collator(port, addresses, options);
+        }
+        catch(IllegalArgumentException e)
+        {
+            LOGGER.log(Level.SEVERE, e.toString(), e);
+            return null;
         }
+    }
 
-        if (success)
+    /**
+     * Starts the listener, and the periodic stats view if it is enabled
+     */
+    public void start()
+    {
+        LOGGER.log(Level.FINE, "Starting listener thread");
+        new Thread(listener, "Collator-" + port).start();
+        LOGGER.log(Level.FINE, "Listener thread started");
+        if (statsIntervalMillis > 0)
         {
-            Collator.port = port;
-            Collator.addressList = Collections.unmodifiableList(addresses);
-            Collator.ready = new ArrayList<>();
-            Collator.summaryList = new ArrayList<>();
-
-            Collator.listener = new Collator.CollatorListener(Collator.port);
-            // Default initialize to null for consistent ordering with addressList
-            while(Collator.summaryList.size() < Collator.addressList.size()) {
-                Collator.ready.add(false);
-                Collator.summaryList.add(null);
-            }
+            statsPrinter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Collator-stats");
+                t.setDaemon(true);
+                return t;
+            });
+            statsPrinter.scheduleAtFixedRate(this::printStats, statsIntervalMillis, statsIntervalMillis, TimeUnit.MILLISECONDS);
         }
+    }
+
+    /**
+     * Waits for the summaries of all processes to arrive
+     * @param timeout longest time to wait
+     * @param unit unit of {@code timeout}
+     * @return {@code true} if every summary arrived, {@code false} if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return completed.await(timeout, unit);
+    }
 
-        return success;
+    /**
+     * Returns the totals printed in the last row of the summary
+     * @return the totals, with the number of processes they cover, or {@code null} before completion
+     */
+    public Summary getTotal()
+    {
+        return total;
     }
 
     public static void main(String[] args)
     {
         LOGGER.setLevel(Level.ALL);
-        if (Collator.parseArgs(args))
-        {
-            LOGGER.log(Level.FINE, "Starting listener thread");
-            new Thread(Collator.listener).start();
-            LOGGER.log(Level.FINE, "Listener thread started");
-        }
+        Collator c = Collator.parseArgs(args);
+        if (c != null)
+            c.start();
         else
-        {
             printUsage();
-        }
     }
 
-    private static class CollatorListener extends Listener
+    private class CollatorListener extends Listener
     {
+        private final ExecutorService pool;
+
         public CollatorListener(int port)
         {
             super(port, true);
+            // Each connection carries a single message, so a few threads keep up with many processes
+            pool = Executors.newFixedThreadPool(Math.max(1, Math.min(Collator.this.addressList.size(), MAX_HANDLER_THREADS)));
         }
 
         @Override
         public void handleClient(Socket s)
+        {
+            pool.execute(() -> receiveOne(s));
+        }
+
+        @Override
+        protected boolean closeOther()
+        {
+            pool.shutdown();
+            return true;
+        }
+
+        private void receiveOne(Socket s)
         {
             InetAddress clientAddress = s.getInetAddress();
             if (clientAddress != null)
             {
                 LOGGER.log(Level.INFO, "Received a new connection request from " + clientAddress.toString());
-                boolean isValid = Collator.validateHost(clientAddress, VALIDATION_MODE.EXCLUDE_NONE) >= 0;
+                boolean isValid = Collator.this.validateHost(clientAddress, VALIDATION_MODE.EXCLUDE_NONE) >= 0;
                 if (isValid)
                 {
                     LOGGER.log(Level.INFO, "Connection request is valid. Accepting");
                     LOGGER.log(Level.FINE, "Starting receiver");
 
-                    Collator.CollatorReceiver r = null;
+                    CollatorReceiver r = null;
                     try {
                         r = new CollatorReceiver(s);
                         Message m = r.receive();
-                        r.handleMessage(m, s.getInetAddress());
+                        if (m != null)
+                            r.handleMessage(m, s.getInetAddress());
+                        else
+                            LOGGER.log(Level.WARNING, "Remote host closed the connection without sending a message");
                     }
                     catch (IllegalStateException e)
                     {
@@ -236,7 +456,27 @@ public final class Collator {
         }
     }
 
-    private static class CollatorReceiver extends Receiver
+    private class CollatorSelectorListener extends SelectorListener
+    {
+        public CollatorSelectorListener(int port)
+        {
+            super(port, true);
+        }
+
+        @Override
+        protected boolean acceptClient(InetAddress addr)
+        {
+            return Collator.this.validateHost(addr, VALIDATION_MODE.EXCLUDE_NONE) >= 0;
+        }
+
+        @Override
+        public void handleMessage(Message m, InetAddress source)
+        {
+            Collator.this.onMessage(m, source);
+        }
+    }
+
+    private class CollatorReceiver extends Receiver
     {
         CollatorReceiver(Socket s)
         {
@@ -246,18 +486,7 @@ public final class Collator {
         @Override
         public void handleMessage(Message m, InetAddress source)
         {
-            LOGGER.log(Level.FINE, "Received a message");
-            LOGGER.log(Level.INFO, "Message type is " + m.getType());
-            switch (m.getType()) {
-                case READY:
-                    Collator.onReady(source);
-                    break;
-                case SUMMARY:
-                    Collator.onSummary((Summary) m, source);
-                    break;
-                default:
-                    throw new UnsupportedOperationException("Invalid message received");
-            }
+            Collator.this.onMessage(m, source);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package a1.nodes;
+
+/**
+ * State of the completion all-reduce, which replaces the all-to-all DONE broadcast. Processes are placed in the
+ * order of the Collator's address list into a {@code fanout}-ary heap rooted at the first process. Once a process
+ * has finished sending, it adds the number of payloads it sent to every process to the counts collected from its
+ * children and passes the sum to its parent. The root ends up with the total for every process and sends it back
+ * down, so every process learns how many payloads to expect after O(log N) hops each way. Counts from children
+ * may arrive before this process knows its own position, so they are kept until it does.
+ */
+final class CompletionTree
+{
+    /**
+     * Config file option of the Collator that sets the fanout of the tree; 0 falls back to the DONE broadcast
+     */
+    static final String FANOUT_OPTION = "done.fanout";
+    static final int DEFAULT_FANOUT = 2;
+
+    static final int NONE = -1;
+
+    private final long[] partial;
+    private int position = NONE;
+    private int fanout = 0;
+    private int childrenAdded = 0;
+    private boolean ownAdded = false;
+    private boolean reported = false;
+
+    /**
+     * @param processes total number of processes, including this one
+     */
+    CompletionTree(int processes)
+    {
+        this.partial = new long[processes];
+    }
+
+    static int parentOf(int index, int fanout)
+    {
+        return index == 0 ? NONE : (index - 1) / fanout;
+    }
+
+    static int firstChildOf(int index, int fanout)
+    {
+        return (int) Math.min(Integer.MAX_VALUE, (long) index * fanout + 1);
+    }
+
+    static int childCount(int index, int fanout, int processes)
+    {
+        long first = (long) index * fanout + 1;
+        return (int) Math.max(0, Math.min(processes - 1, first + fanout - 1) - first + 1);
+    }
+
+    int size()
+    {
+        return partial.length;
+    }
+
+    synchronized int getPosition()
+    {
+        return position;
+    }
+
+    synchronized int getParent()
+    {
+        return parentOf(position, fanout);
+    }
+
+    synchronized int[] getChildren()
+    {
+        int[] children = new int[childCount(position, fanout, partial.length)];
+        for (int i = 0; i < children.length; i++)
+            children[i] = firstChildOf(position, fanout) + i;
+        return children;
+    }
+
+    /**
+     * Places this process in the tree
+     * @param position index of this process in the Collator's address list
+     * @param fanout fanout of the tree; must be positive
+     * @return the counts to pass up if every child has already reported and this process has added its own,
+     * else {@code null}
+     */
+    synchronized long[] join(int position, int fanout)
+    {
+        this.position = position;
+        this.fanout = fanout;
+        return takeIfComplete();
+    }
+
+    /**
+     * Adds the counts of this process
+     * @param counts payloads sent to each process, indexed as in the Collator's address list
+     * @return the counts to pass up if the subtree is now complete, else {@code null}
+     */
+    synchronized long[] addOwn(long[] counts)
+    {
+        add(counts);
+        ownAdded = true;
+        return takeIfComplete();
+    }
+
+    /**
+     * Adds the counts reported by a child
+     * @param counts payloads sent to each process by the child's subtree
+     * @return the counts to pass up if the subtree is now complete, else {@code null}
+     */
+    synchronized long[] addChild(long[] counts)
+    {
+        add(counts);
+        childrenAdded++;
+        return takeIfComplete();
+    }
+
+    private void add(long[] counts)
+    {
+        for (int i = 0; i < partial.length; i++)
+            partial[i] += counts[i];
+    }
+
+    private long[] takeIfComplete()
+    {
+        if (reported || position == NONE || !ownAdded || childrenAdded < childCount(position, fanout, partial.length))
+            return null;
+        reported = true;
+        return partial.clone();
+    }
+}
@@ -0,0 +1,124 @@
+package a1.nodes;
+
+import a1.messages.Summary;
+import a1.transport.SelectorListener;
+import a1.util.ConfigReader;
+import a1.util.TokenParser;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.*;
+
+/**
+ * Runs a whole a1 overlay inside one JVM: a {@link Collator} on {@code BASE_PORT} and N {@link Process}
+ * instances on the following loopback ports, all configured with the same options. It reports how long the
+ * run took from the first READY to the final summary, and whether the summary balances.
+ *
+ * Unless overridden, the cluster uses the selector transport, so that each process needs one listener thread
+ * rather than one per peer, and the periodic stats view is off.
+ */
+public final class LocalCluster
+{
+    private static final Logger LOGGER = Logger.getLogger(LocalCluster.class.getName());
+    private static final String TIMEOUT_OPTION = "cluster.timeout.s";
+    private static final int DEFAULT_TIMEOUT_SECONDS = 600;
+
+    private LocalCluster() {}
+
+    private static void printUsage()
+    {
+        System.out.println("Usage: java LocalCluster <PROCESSES> <BASE_PORT> [option=value ...]");
+    }
+
+    /**
+     * Starts the cluster and waits for it to finish
+     * @param processes number of processes
+     * @param basePort port of the Collator; processes listen on the ports after it
+     * @param options options given to the Collator and every process
+     * @return {@code true} if every summary arrived in time and sent and received totals match
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static boolean run(int processes, int basePort, Map<String, String> options) throws InterruptedException
+    {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        InetSocketAddress collatorAddress = new InetSocketAddress(loopback, basePort);
+        List<InetSocketAddress> addresses = new ArrayList<>(processes);
+        for (int i = 1; i <= processes; i++)
+            addresses.add(new InetSocketAddress(loopback, basePort + i));
+
+        Collator collator = new Collator(basePort, addresses, options);
+        List<Process> nodes = new ArrayList<>(processes);
+        for (int i = 0; i < processes; i++)
+        {
+            List<InetSocketAddress> peers = new ArrayList<>(addresses);
+            peers.remove(i);
+            nodes.add(new Process(addresses.get(i).getPort(), collatorAddress, peers, options));
+        }
+
+        long begin = System.nanoTime();
+        collator.start();
+        for (Process p : nodes)
+            p.start();
+
+        int timeout = ConfigReader.getIntOption(options, TIMEOUT_OPTION, DEFAULT_TIMEOUT_SECONDS, 1, Integer.MAX_VALUE);
+        if (!collator.awaitCompletion(timeout, TimeUnit.SECONDS))
+        {
+            System.out.println(String.format("FAILED: %d processes did not finish within %d s", processes, timeout));
+            return false;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        Summary total = collator.getTotal();
+        boolean balanced = total.getProcesses() == processes && total.getSent() == total.getReceived()
+                && total.getSentSummation() == total.getReceivedSummation();
+        System.out.println(String.format("%s: %d processes finished in %d ms, %d messages (%.0f msg/s)",
+                balanced ? "OK" : "FAILED", processes, elapsedMillis, total.getSent(),
+                total.getSent() * 1000.0 / Math.max(1, elapsedMillis)));
+        return balanced;
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        if (args.length < 2)
+        {
+            printUsage();
+            return;
+        }
+
+        int processes;
+        int basePort;
+        Map<String, String> options = new HashMap<>();
+        options.put(SelectorListener.TRANSPORT_OPTION, SelectorListener.SELECTOR_TRANSPORT);
+        options.put(Process.STATS_INTERVAL_OPTION, "0");
+        try
+        {
+            processes = TokenParser.parseAsInt(args[0], 1, 65535);
+            basePort = TokenParser.parseAsInt(args[1], 1, 65535 - processes);
+            for (int i = 2; i < args.length; i++)
+            {
+                int eq = args[i].indexOf('=');
+                if (eq <= 0)
+                    throw new IllegalArgumentException("Expected option=value, got " + args[i]);
+                options.put(args[i].substring(0, eq).trim(), args[i].substring(eq + 1).trim());
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            LOGGER.log(Level.SEVERE, e.toString());
+            printUsage();
+            return;
+        }
+
+        // With hundreds of nodes in one JVM, per-message logging would drown the result
+        Logger.getLogger("").setLevel(Level.WARNING);
+        for (Handler h : Logger.getLogger("").getHandlers())
+            h.setLevel(Level.WARNING);
+
+        System.exit(run(processes, basePort, options) ? 0 : 1);
+    }
+}
@@ -9,30 +9,78 @@ import java.net.*;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.*;
 
 public final class Process {
 
     private static final Logger LOGGER = Logger.getLogger(Process.class.getName());
-    private static final int NUM_ROUNDS = 5000;
-    private static final int MSGS_PER_ROUND = 5;
-
-    private static int port = -1;
-    private static InetSocketAddress collatorAddress;
-    private static List<InetSocketAddress> addressList;
-    private static List<Boolean> done;
-    private static boolean doneSending = false;
-    private static final Object doneSendingBarrier = new Object();
-    private static ProcessListener listener;
-
-    private static AtomicInteger sent = new AtomicInteger(0);
-    private static AtomicInteger received = new AtomicInteger(0);
-    private static AtomicLong sentSummation = new AtomicLong(0);
-    private static AtomicLong receivedSummation = new AtomicLong(0);
-
-    private static boolean allDone()
+    private static final String BATCH_SIZE_OPTION = "batch.size";
+    private static final String BATCH_LINGER_OPTION = "batch.linger.ms";
+    static final String STATS_INTERVAL_OPTION = "stats.interval.ms";
+    static final int DEFAULT_STATS_INTERVAL_MILLIS = 1000;
+
+    private final int port;
+    private final InetSocketAddress collatorAddress;
+    private final List<InetSocketAddress> addressList;
+    private final PeerIndex peerIndex;
+    private final List<Boolean> done;
+    private boolean doneSending = false;
+    private boolean summarized = false;
+    private final Object completionLock = new Object();
+    // Where this process reports, and what it has collected from the processes that report to it
+    private InetSocketAddress summaryTarget;
+    private int pendingChildren = 0;
+    private int childProcesses = 0;
+    private int childSent = 0;
+    private int childReceived = 0;
+    private long childSentSummation = 0;
+    private long childReceivedSummation = 0;
+    // Used instead of DONE when the Collator asks for a completion tree
+    private int position = -1;
+    private int doneFanout = 0;
+    private final CompletionTree completionTree;
+    private volatile long expectedReceived = -1;
+    private final AtomicBoolean delivered = new AtomicBoolean(false);
+    private final Listener listener;
+    private final int batchSize;
+    private final int batchLingerMillis;
+    private final int sendQueueCapacity;
+    private final String receiverPool;
+    private final TrafficGenerator generator;
+    private final int statsIntervalMillis;
+    private ScheduledExecutorService statsReporter;
+    private final TrafficStats stats = new TrafficStats();
+
+    // Updated by every receiver thread, so striped to keep them from contending on a single cell.
+    // With DONE they are only read once all DONEs are in, when no receiver is updating them any more. With the
+    // completion tree, checkDelivered reads received while receivers are still adding to it, so a receiver adds
+    // to receivedSummation before received: once received reaches the expected count, the sum is complete.
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder sentSummation = new LongAdder();
+    private final LongAdder receivedSummation = new LongAdder();
+
+    // Receivers decode payload frames straight into the counters, without creating a message for each
+    private final PayloadHandler payloadHandler = new PayloadHandler()
+    {
+        @Override
+        public void onPayload(int data)
+        {
+            Process.this.onPayload(1, data);
+        }
+
+        @Override
+        public void onPayloads(int count, long sum)
+        {
+            Process.this.onPayload(count, sum);
+        }
+    };
+
+    private boolean allDone()
     {
         synchronized (done) {
             for (boolean i : done)
@@ -42,89 +90,253 @@ public final class Process {
         return true;
     }
 
-    private Process() {}
+    /**
+     * Creates a process and binds its listener, without starting it
+     * @param port port to listen on
+     * @param collatorAddress address of the Collator
+     * @param addresses addresses of every other process, in the Collator's order
+     * @param options options as returned by {@link ConfigReader#readOptions(String)}
+     * @throws IllegalArgumentException if any of the options has an invalid value
+     * @throws IllegalStateException if the listener cannot bind to {@code port}
+     */
+    public Process(int port, InetSocketAddress collatorAddress, List<InetSocketAddress> addresses, Map<String, String> options)
+    {
+        this.batchSize = ConfigReader.getIntOption(options, BATCH_SIZE_OPTION, 1, 1, PayloadBatch.MAX_COUNT);
+        this.batchLingerMillis = ConfigReader.getIntOption(options, BATCH_LINGER_OPTION, 0, 0, 60000);
+        this.sendQueueCapacity = ConfigReader.getIntOption(options, ConnectionPool.QUEUE_CAPACITY_OPTION, 0, 0, 1 << 20);
+        this.receiverPool = ReceiverExecutors.getKind(options);
+        this.statsIntervalMillis = ConfigReader.getIntOption(options, STATS_INTERVAL_OPTION,
+                DEFAULT_STATS_INTERVAL_MILLIS, 0, 3600000);
+        this.generator = TrafficGenerator.fromOptions(options, addresses);
+        if (generator.isPadded() && batchSize > 1)
+            throw new IllegalArgumentException("Padded payloads cannot be batched; set either "
+                    + TrafficGenerator.PAYLOAD_SIZE_OPTION + " or " + BATCH_SIZE_OPTION + ", not both");
+
+        this.port = port;
+        this.collatorAddress = collatorAddress;
+        this.addressList = Collections.unmodifiableList(new ArrayList<>(addresses));
+        this.peerIndex = new PeerIndex(this.addressList);
+        this.completionTree = new CompletionTree(this.addressList.size() + 1);
+        this.done = new ArrayList<>(Collections.nCopies(this.addressList.size(), false));
+
+        if (SelectorListener.isConfigured(options))
+        {
+            ProcessSelectorListener l = new ProcessSelectorListener(port);
+            l.setTrafficStats(stats);
+            l.setPayloadHandler(payloadHandler);
+            this.listener = l;
+        }
+        else
+            this.listener = new ProcessListener(port);
+    }
 
-    private static void onPayload(Payload m) {
-        received.incrementAndGet();
-        receivedSummation.addAndGet(m.getData());
+    private void onPayload(int count, long sum) {
+        receivedSummation.add(sum);
+        received.add(count);
+        if (expectedReceived >= 0)
+            checkDelivered();
     }
 
-    private static void onInitiate() {
-        Random nodeChooser = new Random();
-        Random payloadGen = new Random();
-
-        for (int i = 0; i < NUM_ROUNDS; i++) {
-            int target = nodeChooser.nextInt(addressList.size());
-            LOGGER.log(Level.FINEST, "Target index is " + target);
-            Sender s = null;
-            try {
-                LOGGER.log(Level.FINER, "Target is: " + addressList.get(target));
-                s = new Sender(addressList.get(target));
-
-                for (int j = 0; j < MSGS_PER_ROUND; j++) {
-                    Payload m = new Payload(payloadGen.nextInt());
-                    s.send(m);
-                    sent.incrementAndGet();
-                    sentSummation.addAndGet(m.getData());
-                }
-            } catch (IllegalStateException e) {
-                LOGGER.log(Level.SEVERE, e.getMessage());
-            }
-            finally {
-                if (s!=null)
-                    s.close();
-            }
+    /**
+     * Maps an index in the Collator's address list to the address of that peer
+     */
+    private InetSocketAddress peerAt(int index)
+    {
+        return addressList.get(index < position ? index : index - 1);
+    }
+
+    /**
+     * Adds the payloads this process sent to the completion tree, passing the counts up if the subtree is complete
+     */
+    private void contributeCounts()
+    {
+        long[] counts = new long[completionTree.size()];
+        for (int i = 0; i < addressList.size(); i++)
+            counts[i < position ? i : i + 1] = generator.getSentTo(i);
+        long[] up = completionTree.addOwn(counts);
+        if (up != null)
+            reportCounts(up);
+    }
+
+    private void reportCounts(long[] counts)
+    {
+        int parent = completionTree.getParent();
+        if (parent == CompletionTree.NONE)
+            onCompletionTotal(counts);
+        else
+            sendTo(peerAt(parent), new Completion(false, counts));
+    }
+
+    private void onCompletion(Completion m)
+    {
+        if (completionTree == null || m.getCounts().length != completionTree.size())
+        {
+            LOGGER.log(Level.WARNING, "COMPLETION message does not match the number of processes");
+            return;
         }
-        LOGGER.log(Level.INFO, "Sent all messages");
-        Sender.broadcast(new Done(), addressList);
-        synchronized (doneSendingBarrier)
+        if (m.isTotal())
         {
-            doneSending = true;
-            doneSendingBarrier.notify();
+            onCompletionTotal(m.getCounts());
+        }
+        else
+        {
+            long[] up = completionTree.addChild(m.getCounts());
+            if (up != null)
+                reportCounts(up);
         }
     }
 
-    private static void onDone(InetAddress source)
+    /**
+     * Passes the totals down the tree, then waits for this process's share of them to be delivered
+     */
+    private void onCompletionTotal(long[] totals)
     {
-        int idx = validateHost(source, Process.VALIDATION_MODE.EXCLUDE_DONE);
-        if (idx >= 0)
+        Completion down = new Completion(true, totals);
+        for (int child : completionTree.getChildren())
+            sendTo(peerAt(child), down);
+        expectedReceived = totals[position];
+        LOGGER.log(Level.INFO, "Expecting " + expectedReceived + " messages in total");
+        checkDelivered();
+    }
+
+    /**
+     * Once every payload addressed to this process has arrived, marks every peer done, exactly as if DONE had
+     * been received from each of them
+     */
+    private void checkDelivered()
+    {
+        long count = received.sum();
+        if (count < expectedReceived || delivered.get())
+            return;
+        if (count > expectedReceived)
+            LOGGER.log(Level.WARNING, "Received " + count + " messages, more than the " + expectedReceived + " sent");
+        if (!delivered.compareAndSet(false, true))
+            return;
+
+        synchronized (done)
+        {
+            for (int i = 0; i < done.size(); i++)
+                done.set(i, true);
+        }
+        LOGGER.log(Level.INFO, "Received all messages");
+        sendSummaryIfComplete();
+    }
+
+    private void sendTo(InetSocketAddress addr, Message m)
+    {
+        Sender s = null;
+        try {
+            s = new Sender(addr);
+            s.send(m);
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Unable to send " + m.getType() + " to " + addr + ": " + e.getMessage());
+        }
+        finally {
+            if (s != null)
+                s.close();
+        }
+    }
+
+    /**
+     * Works out this process's place in the summary and completion trees from the position the Collator gave it.
+     * The config file lists every process but this one, in the Collator's order, so its index there is the index
+     * in that list for every process before this one.
+     */
+    private void joinTrees(Initiate m)
+    {
+        int processes = addressList.size() + 1;
+        int position = m.getPosition();
+        int fanout = m.getSummaryFanout();
+        int doneFanout = m.getDoneFanout();
+        if (fanout < 0 || doneFanout < 0 || position < 0 || position >= processes)
+        {
+            LOGGER.log(Level.WARNING, "Invalid tree position " + position + ", reporting to the Collator and all peers");
+            position = 0;
+            fanout = 0;
+            doneFanout = 0;
+        }
+        this.position = position;
+        this.doneFanout = doneFanout;
+        if (doneFanout > 0)
+        {
+            long[] up = completionTree.join(position, doneFanout);
+            if (up != null)
+                reportCounts(up);
+        }
+
+        int parent = SummaryTree.parentOf(position, fanout);
+        synchronized (completionLock)
+        {
+            summaryTarget = parent == SummaryTree.COLLATOR ? collatorAddress : addressList.get(parent);
+            pendingChildren = SummaryTree.childCount(position, fanout, processes);
+        }
+        LOGGER.log(Level.FINE, "Reporting to " + summaryTarget + " after " + pendingChildren + " children");
+    }
+
+    private void onSummary(Summary m)
+    {
+        synchronized (completionLock)
         {
-            synchronized (done)
+            if (pendingChildren == 0)
             {
-                done.set(idx, true);
+                LOGGER.log(Level.WARNING, "Unexpected SUMMARY received from port " + m.getPort());
+                return;
             }
+            pendingChildren--;
+            childProcesses += m.getProcesses();
+            childSent += m.getSent();
+            childReceived += m.getReceived();
+            childSentSummation += m.getSentSummation();
+            childReceivedSummation += m.getReceivedSummation();
+        }
+        sendSummaryIfComplete();
+    }
+
+    private void onInitiate(Initiate m) {
+        joinTrees(m);
+        startStatsReporter();
+        ConnectionPool peers = new ConnectionPool(addressList, stats, sendQueueCapacity);
+        PayloadBatcher batcher = batchSize > 1 ? new PayloadBatcher(peers, batchSize, batchLingerMillis) : null;
+
+        try {
+            generator.run(peers, batcher);
+            sent.add(generator.getSent());
+            sentSummation.add(generator.getSentSummation());
+            if (batcher != null)
+                batcher.close();
+            LOGGER.log(Level.INFO, "Sent all messages");
+            // DONE travels on the same connections as the payloads, so it is always received after them
+            if (doneFanout == 0)
+                peers.broadcast(new Done());
+        }
+        finally {
+            peers.close();
+        }
+        if (doneFanout > 0)
+            contributeCounts();
+        synchronized (completionLock)
+        {
+            doneSending = true;
+        }
+        sendSummaryIfComplete();
+    }
 
+    private void onDone(InetAddress source)
+    {
+        int idx;
+        // Peers sharing a host are told apart only by which of them is still pending, so the lookup
+        // and the update must happen together
+        synchronized (done)
+        {
+            idx = validateHost(source, VALIDATION_MODE.EXCLUDE_DONE);
+            if (idx >= 0)
+                done.set(idx, true);
+        }
+        if (idx >= 0)
+        {
             if (allDone()) {
                 LOGGER.log(Level.INFO, "Received all messages");
-                try
-                {
-                    synchronized(doneSendingBarrier)
-                    {
-                        while(!doneSending)
-                            doneSendingBarrier.wait();
-                    }
-                }
-                catch(InterruptedException e)
-                {
-                    LOGGER.log(Level.SEVERE, e.toString(), e);
-                }
-
-                Sender s = null;
-                try {
-                    s = new Sender(Process.collatorAddress);
-                    Summary summary = new Summary(sent.get(), received.get(), sentSummation.get(), receivedSummation.get());
-                    s.send(summary);
-                    LOGGER.log(Level.INFO,
-                            String.format("Sent the summary: Sent %d, Received %d, Sent Summation %d, Received Summation %d",
-                                    summary.getSent(), summary.getReceived(), summary.getSentSummation(), summary.getReceivedSummation()));
-                } catch (IllegalStateException e) {
-                    LOGGER.log(Level.WARNING, e.getMessage());
-                }
-                finally {
-                    if (s != null)
-                        s.close();
-                    Process.listener.close();
-                }
+                sendSummaryIfComplete();
             }
         }
         else
@@ -133,116 +345,221 @@ public final class Process {
         }
     }
 
+    /**
+     * Sends the summary of this process and the processes that report to it once this process has sent all
+     * its messages, received DONE from every peer, and heard from all of its children in the summary tree.
+     * Whichever of these happens last triggers the summary, so no thread ever has to wait for another.
+     */
+    private void sendSummaryIfComplete()
+    {
+        Summary summary;
+        synchronized (completionLock)
+        {
+            if (!doneSending || summarized || pendingChildren > 0 || !allDone())
+                return;
+            summarized = true;
+            summary = new Summary(this.port, 1 + childProcesses,
+                    sent.intValue() + childSent, received.intValue() + childReceived,
+                    sentSummation.sum() + childSentSummation, receivedSummation.sum() + childReceivedSummation);
+        }
+        stopStatsReporter();
+
+        Sender s = null;
+        try {
+            s = new Sender(this.summaryTarget);
+            s.send(summary);
+            LOGGER.log(Level.INFO,
+                    String.format("Sent the summary of %d processes to %s: Sent %d, Received %d, Sent Summation %d, Received Summation %d",
+                            summary.getProcesses(), this.summaryTarget, summary.getSent(), summary.getReceived(),
+                            summary.getSentSummation(), summary.getReceivedSummation()));
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, e.getMessage());
+        }
+        finally {
+            if (s != null)
+                s.close();
+            this.listener.close();
+        }
+    }
+
+    /**
+     * Starts shipping a {@link Stats} frame to the Collator every {@code stats.interval.ms}, unless the option is 0
+     */
+    private void startStatsReporter()
+    {
+        if (statsIntervalMillis == 0)
+            return;
+        statsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Process-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        statsReporter.scheduleAtFixedRate(this::sendStats, statsIntervalMillis, statsIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the stats reporter, waiting for a report in flight so that it cannot reach the Collator after the summary
+     */
+    private void stopStatsReporter()
+    {
+        if (statsReporter == null)
+            return;
+        statsReporter.shutdown();
+        try {
+            statsReporter.awaitTermination(statsIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendStats()
+    {
+        // Reports go over their own short connection, which is not counted in the stats it carries
+        Sender s = null;
+        try {
+            s = new Sender(this.collatorAddress);
+            s.send(stats.snapshot(this.port));
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Unable to send stats: " + e.getMessage());
+        }
+        finally {
+            if (s != null)
+                s.close();
+        }
+    }
+
+    private void onMessage(Message m, InetAddress source)
+    {
+        LOGGER.log(Level.FINER, "Received a message");
+        LOGGER.log(Level.FINEST, "Message type is " + m.getType());
+        switch (m.getType()) {
+            case INITIATE:
+                // Sending takes the whole run, so keep it off the thread that delivers messages
+                new Thread(() -> this.onInitiate((Initiate) m)).start();
+                break;
+            case PAYLOAD:
+            case PADDED_PAYLOAD:
+                this.onPayload(1, ((Payload) m).getData());
+                break;
+            case PAYLOAD_BATCH:
+                PayloadBatch batch = (PayloadBatch) m;
+                this.onPayload(batch.getCount(), batch.getSum());
+                break;
+            case DONE:
+                this.onDone(source);
+                break;
+            case SUMMARY:
+                this.onSummary((Summary) m);
+                break;
+            case COMPLETION:
+                this.onCompletion((Completion) m);
+                break;
+            default:
+                throw new UnsupportedOperationException("Invalid message received");
+        }
+    }
+
     private enum VALIDATION_MODE {EXCLUDE_NONE, EXCLUDE_DONE}
 
-    private static int validateHost(InetAddress addr, Process.VALIDATION_MODE mode)
+    private int validateHost(InetAddress addr, VALIDATION_MODE mode)
     {
-        String target = addr.getCanonicalHostName();
-        for(int i = 0; i < addressList.size(); i++)
+        for(int i: peerIndex.lookup(addr))
         {
-            if (mode == Process.VALIDATION_MODE.EXCLUDE_DONE && done.get(i))
+            if (mode == VALIDATION_MODE.EXCLUDE_DONE && done.get(i))
                 continue;
-            String cur = addressList.get(i).getHostString();
-            LOGGER.log(Level.FINEST, "Comparing target " + target + " against " + cur);
-            if (cur.equals(target))            {
-                return i;
-            }
+            return i;
         }
         return -1;
     }
 
-
+    private boolean isValidSource(InetAddress addr)
+    {
+        return this.validateHost(addr, VALIDATION_MODE.EXCLUDE_NONE) >= 0 ||
+                addr.equals(this.collatorAddress.getAddress());
+    }
 
     private static void printUsage()
     {
         System.out.println("Usage: java Process <PORT> <COLLATOR_ADDRESS> <PATH_TO_CONFIG_FILE>");
     }
 
-    public static boolean parseArgs(String[] args)
+    /**
+     * Creates a process from its command line arguments
+     * @param args port, Collator address and path to the config file
+     * @return the process, not yet started, or {@code null} if the arguments are invalid
+     */
+    public static Process parseArgs(String[] args)
     {
-        int port = -1;
-        InetSocketAddress collatorAddress = null;
-        List<InetSocketAddress> addresses = null;
+        if (args.length != 3)
+            return null;
 
-        boolean success = false;
+        try {
+            int port = TokenParser.parseAsInt(args[0], 0, 65535);
+            InetSocketAddress collatorAddress = TokenParser.parseAsAddress(args[1], true);
 
-        if (args.length == 3) {
-            try {
-                port = TokenParser.parseAsInt(args[0], 0, 65535);
+            File f = TokenParser.parseAsPath(args[2]);
+            List<InetSocketAddress> addresses = ConfigReader.read(f.getPath(), false, true);
+            Map<String, String> options = ConfigReader.readOptions(f.getPath());
+            if (addresses == null || options == null)
+                return null;
 
-                collatorAddress = TokenParser.parseAsAddress(args[1], true);
+            return new Process(port, collatorAddress, addresses, options);
+        }
+        catch(IllegalArgumentException e)
+        {
+            LOGGER.log(Level.INFO, e.toString(), e);
+            return null;
+        }
+    }
 
-                File f = TokenParser.parseAsPath(args[2]);
-                addresses = ConfigReader.read(f.getPath(), false, true);
+    /**
+     * Starts the listener and tells the Collator this process is ready
+     */
+    public void start()
+    {
+        LOGGER.log(Level.FINER, "Starting listener thread");
+        new Thread(listener, "Process-" + port).start();
+        LOGGER.log(Level.FINER, "Thread started");
 
-                if (addresses != null)
-                    success = true;
-            }
-            catch(IllegalArgumentException e)
-            {
-                LOGGER.log(Level.INFO, e.toString(), e);
-                return false;
-            }
+        Sender s = null;
+        try
+        {
+            LOGGER.log(Level.FINER, "Sending READY message to Collator");
+            s = new Sender(collatorAddress);
+            s.send(new Ready());
+            LOGGER.log(Level.FINER, "READY sent");
         }
-
-        if (success)
+        catch (IllegalStateException e)
         {
-            Process.port = port;
-            Process.collatorAddress = collatorAddress;
-            Process.addressList = Collections.unmodifiableList(addresses);
-            Process.done = new ArrayList<>();
-
-            LOGGER.log(Level.FINER, "Starting listener thread");
-            Process.listener = new Process.ProcessListener(Process.port);
-            new Thread(Process.listener).start();
-            LOGGER.log(Level.FINER, "Thread started");
-
-            while(Process.done.size() < Process.addressList.size()) {
-                Process.done.add(false);
-            }
+            LOGGER.log(Level.SEVERE, e.toString(), e);
+        }
+        finally
+        {
+            if (s!=null)
+                s.close();
         }
-
-        return success;
     }
 
     public static void main(String[] args)
     {
         LOGGER.setLevel(Level.ALL);
-        if (Process.parseArgs(args))
-        {
-            Sender s = null;
-            try
-            {
-                LOGGER.log(Level.FINER, "Sending READY message to Collator");
-                s = new Sender(Process.collatorAddress);
-                s.send(new Ready());
-                LOGGER.log(Level.FINER, "READY sent");
-            }
-            catch (IllegalStateException e)
-            {
-                LOGGER.log(Level.SEVERE, e.toString(), e);
-            }
-            finally
-            {
-                if (s!=null)
-                    s.close();
-            }
-
-        }
+        Process p = Process.parseArgs(args);
+        if (p != null)
+            p.start();
         else
-        {
             printUsage();
-        }
     }
 
-    private static class ProcessListener extends Listener
+    private class ProcessListener extends Listener
     {
         private final ExecutorService pool;
 
         public ProcessListener(int port)
         {
             super(port, true);
-            pool = Executors.newFixedThreadPool(Process.addressList.size());
+            // Every peer holds one connection open for the whole run
+            pool = ReceiverExecutors.create(Process.this.receiverPool, Process.this.addressList.size());
         }
 
         @Override
@@ -259,44 +576,38 @@ public final class Process {
         }
     }
 
-    private static class ProcessReceiver extends Receiver implements Runnable
+    private class ProcessSelectorListener extends SelectorListener
     {
-        public ProcessReceiver(Socket s)
+        public ProcessSelectorListener(int port)
         {
-            super(s);
+            super(port, true);
         }
-        private int consecutivePayloads = 0;
 
-        private boolean shouldClose()
+        @Override
+        protected boolean acceptClient(InetAddress addr)
         {
-            if(consecutivePayloads == 5) {
-                consecutivePayloads = 0;
-                return true;
-            }
-            return false;
+            return Process.this.isValidSource(addr);
         }
 
         @Override
         public void handleMessage(Message m, InetAddress source)
         {
-            LOGGER.log(Level.FINER, "Received a message");
-            LOGGER.log(Level.FINEST, "Message type is " + m.getType());
-            switch (m.getType()) {
-                case INITIATE:
-                    consecutivePayloads = 5;
-                    Process.onInitiate();
-                    break;
-                case PAYLOAD:
-                    consecutivePayloads++;
-                    Process.onPayload((Payload) m);
-                    break;
-                case DONE:
-                    consecutivePayloads = 5;
-                    Process.onDone(source);
-                    break;
-                default:
-                    throw new UnsupportedOperationException("Invalid message received");
-            }
+            Process.this.onMessage(m, source);
+        }
+    }
+
+    private class ProcessReceiver extends Receiver implements Runnable
+    {
+        public ProcessReceiver(Socket s)
+        {
+            super(s, Process.this.stats);
+            setPayloadHandler(Process.this.payloadHandler);
+        }
+
+        @Override
+        public void handleMessage(Message m, InetAddress source)
+        {
+            Process.this.onMessage(m, source);
         }
 
         @Override
@@ -305,23 +616,23 @@ public final class Process {
             InetAddress clientAddress = super.sock.getInetAddress();
             if (clientAddress != null)
             {
-                boolean isValid =  Process.validateHost(clientAddress, VALIDATION_MODE.EXCLUDE_NONE) >= 0 ||
-                        clientAddress.getCanonicalHostName().equals(Process.collatorAddress.getHostString()) ;
-                if (isValid)
+                if (Process.this.isValidSource(clientAddress))
                 {
                     LOGGER.log(Level.FINE, "Connection request is valid");
                     LOGGER.log(Level.FINER, "Starting receiver");
 
-                    while(!shouldClose())
+                    // Peers keep their connection open across rounds, so read until they close it
+                    while(true)
                     {
                         try {
                             Message m = receive();
+                            if (m == null)
+                                break;
                             handleMessage(m, super.sock.getInetAddress());
                         }
                         catch (IllegalStateException e)
                         {
                             LOGGER.log(Level.SEVERE, e.getMessage());
-                            close();
                             break;
                         }
                     }
@@ -333,10 +644,10 @@ public final class Process {
                 {
                     LOGGER.log(Level.INFO, "Connection request is invalid. Rejecting");
                     try {
-                        super.sock.close();
+                        close();
                     }
-                    catch (IOException e) {
-                        LOGGER.log(Level.WARNING, e.toString(), e);
+                    catch (IllegalStateException e) {
+                        LOGGER.log(Level.WARNING, e.getMessage());
                     }
                 }
             }
@@ -0,0 +1,58 @@
+package a1.nodes;
+
+/**
+ * Shape of the fan-in tree used to aggregate summaries. Processes are placed in the order of the Collator's
+ * address list into a {@code fanout}-ary heap whose root is the Collator: process {@code i} sits at heap
+ * position {@code i + 1}, so the Collator has the first {@code fanout} processes as children, and every other
+ * process has a parent earlier in the list. A fanout of 0 means no tree: every process reports to the Collator.
+ */
+final class SummaryTree
+{
+    /**
+     * Config file option of the Collator that sets the fanout of the tree
+     */
+    static final String FANOUT_OPTION = "summary.fanout";
+
+    static final int COLLATOR = -1;
+
+    private SummaryTree() {}
+
+    /**
+     * Returns the parent of a process
+     * @param index index of the process in the Collator's address list
+     * @param fanout maximum number of children of every node, or 0 for no tree
+     * @return index of the parent process, or {@link #COLLATOR} if the process reports to the Collator
+     */
+    static int parentOf(int index, int fanout)
+    {
+        if (fanout == 0)
+            return COLLATOR;
+        return index / fanout - 1;
+    }
+
+    /**
+     * Returns the number of processes that report to a process
+     * @param index index of the process in the Collator's address list
+     * @param fanout maximum number of children of every node, or 0 for no tree
+     * @param processes total number of processes
+     * @return number of children of the process
+     */
+    static int childCount(int index, int fanout, int processes)
+    {
+        if (fanout == 0)
+            return 0;
+        long firstChild = (long) (index + 1) * fanout + 1;
+        return (int) Math.max(0, Math.min(processes, firstChild + fanout - 1) - firstChild + 1);
+    }
+
+    /**
+     * Returns the number of processes that report to the Collator; these are always the first ones in its list
+     * @param fanout maximum number of children of every node, or 0 for no tree
+     * @param processes total number of processes
+     * @return number of children of the Collator
+     */
+    static int rootCount(int fanout, int processes)
+    {
+        return fanout == 0 ? processes : Math.min(fanout, processes);
+    }
+}
@@ -0,0 +1,186 @@
+package a1.nodes;
+
+import a1.messages.*;
+import a1.transport.*;
+import a1.util.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.*;
+
+/**
+ * Sends the payloads of a {@link Process}: {@code rounds} rounds, each picking a random peer and sending it
+ * {@code messagesPerRound} random values. The rounds are divided among {@code threads} workers, each with its
+ * own {@link SplittableRandom}, so that a single sending loop does not cap the load a process can generate.
+ * When the pool queues messages, a round whose peer has a full queue is sent to another peer instead, so that
+ * one slow receiver does not stall the whole generator.
+ */
+final class TrafficGenerator
+{
+    private static final Logger LOGGER = Logger.getLogger(TrafficGenerator.class.getName());
+
+    static final String ROUNDS_OPTION = "rounds";
+    static final String MESSAGES_PER_ROUND_OPTION = "messages.per.round";
+    static final String PAYLOAD_SIZE_OPTION = "payload.size";
+    static final String THREADS_OPTION = "sender.threads";
+
+    private static final int DEFAULT_ROUNDS = 5000;
+    private static final int DEFAULT_MESSAGES_PER_ROUND = 5;
+
+    private final List<InetSocketAddress> addressList;
+    private final int rounds;
+    private final int messagesPerRound;
+    private final int payloadSize;
+    private final int threads;
+
+    private final AtomicInteger sent = new AtomicInteger(0);
+    private final AtomicLong sentSummation = new AtomicLong(0);
+    private final AtomicLongArray sentTo;
+
+    TrafficGenerator(List<InetSocketAddress> addressList, int rounds, int messagesPerRound, int payloadSize, int threads)
+    {
+        if (payloadSize < Integer.BYTES)
+            throw new IllegalArgumentException("Payload size must be at least " + Integer.BYTES + " bytes");
+        this.addressList = addressList;
+        this.rounds = rounds;
+        this.messagesPerRound = messagesPerRound;
+        this.payloadSize = payloadSize;
+        this.threads = threads;
+        this.sentTo = new AtomicLongArray(addressList.size());
+    }
+
+    /**
+     * Creates a generator configured by the options in a config file
+     * @param options options as returned by {@link ConfigReader#readOptions(String)}
+     * @param addressList peers to send payloads to
+     * @return the configured generator
+     * @throws IllegalArgumentException if any of the options has an invalid value
+     */
+    static TrafficGenerator fromOptions(Map<String, String> options, List<InetSocketAddress> addressList)
+    {
+        return new TrafficGenerator(addressList,
+                ConfigReader.getIntOption(options, ROUNDS_OPTION, DEFAULT_ROUNDS, 0, Integer.MAX_VALUE),
+                ConfigReader.getIntOption(options, MESSAGES_PER_ROUND_OPTION, DEFAULT_MESSAGES_PER_ROUND, 1, 65536),
+                ConfigReader.getIntOption(options, PAYLOAD_SIZE_OPTION, Integer.BYTES, Integer.BYTES, 65536),
+                ConfigReader.getIntOption(options, THREADS_OPTION, 1, 1, 1024));
+    }
+
+    boolean isPadded()
+    {
+        return payloadSize > Integer.BYTES;
+    }
+
+    /**
+     * Sends all the rounds, returning once every worker has finished
+     * @param peers connections to send the payloads over
+     * @param batcher batcher to add the payloads to, or {@code null} to send every payload in its own frame
+     */
+    void run(ConnectionPool peers, PayloadBatcher batcher)
+    {
+        SplittableRandom root = new SplittableRandom();
+        if (threads == 1)
+        {
+            sendRounds(rounds, root, peers, batcher);
+            return;
+        }
+
+        List<Callable<Void>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            // Spread the remainder over the first few workers
+            int workerRounds = rounds / threads + (t < rounds % threads ? 1 : 0);
+            SplittableRandom random = root.split();
+            workers.add(() -> {
+                sendRounds(workerRounds, random, peers, batcher);
+                return null;
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try
+        {
+            for (Future<Void> f : pool.invokeAll(workers))
+                f.get();
+        }
+        catch (InterruptedException e)
+        {
+            LOGGER.log(Level.SEVERE, e.toString(), e);
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            LOGGER.log(Level.SEVERE, e.getCause().toString(), e.getCause());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private void sendRounds(int workerRounds, SplittableRandom random, ConnectionPool peers, PayloadBatcher batcher)
+    {
+        int workerSent = 0;
+        long workerSummation = 0;
+        long[] workerSentTo = new long[addressList.size()];
+        for (int i = 0; i < workerRounds; i++) {
+            int target = random.nextInt(addressList.size());
+            // With send queues, draw again rather than wait on a peer that has fallen behind
+            for (int tries = 1; tries < addressList.size() && !peers.canAccept(addressList.get(target)); tries++)
+                target = random.nextInt(addressList.size());
+            if (LOGGER.isLoggable(Level.FINEST))
+                LOGGER.log(Level.FINEST, "Target index is " + target);
+            try {
+                InetSocketAddress targetAddress = addressList.get(target);
+                if (LOGGER.isLoggable(Level.FINER))
+                    LOGGER.log(Level.FINER, "Target is: " + targetAddress);
+
+                for (int j = 0; j < messagesPerRound; j++) {
+                    int data = random.nextInt();
+                    if (batcher != null)
+                        batcher.add(targetAddress, data);
+                    else if (isPadded())
+                        peers.sendPayload(targetAddress, data, payloadSize - Integer.BYTES);
+                    else
+                        peers.sendPayload(targetAddress, data);
+                    workerSent++;
+                    workerSummation += data;
+                    workerSentTo[target]++;
+                }
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.SEVERE, e.getMessage());
+            }
+        }
+        sent.addAndGet(workerSent);
+        sentSummation.addAndGet(workerSummation);
+        for (int i = 0; i < workerSentTo.length; i++)
+            if (workerSentTo[i] != 0)
+                sentTo.addAndGet(i, workerSentTo[i]);
+    }
+
+    int getSent()
+    {
+        return sent.get();
+    }
+
+    long getSentSummation()
+    {
+        return sentSummation.get();
+    }
+
+    /**
+     * Returns the number of payloads sent to one peer
+     * @param index index of the peer in the address list the generator was created with
+     * @return number of payloads sent to the peer
+     */
+    long getSentTo(int index)
+    {
+        return sentTo.get(index);
+    }
+}
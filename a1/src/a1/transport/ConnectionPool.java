@@ -0,0 +1,236 @@
+package a1.transport;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import a1.messages.Message;
+import a1.messages.PaddedPayload;
+import a1.messages.Payload;
+
+/**
+ * Keeps one long-lived {@link Sender} per peer so that many rounds of messages can share the same
+ * connection instead of paying for a connect and teardown every round. Connections are opened lazily,
+ * on the first request for a peer, and stay open until {@link #close()} is called.
+ *
+ * A pool created with a queue capacity puts an {@link OutboundQueue} in front of every connection, so that
+ * {@link #send(InetSocketAddress, Message)} only waits when that one peer has fallen behind, and
+ * {@link #trySend(InetSocketAddress, Message)} lets the caller pick another peer instead of waiting at all.
+ */
+public final class ConnectionPool
+{
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    /**
+     * Config file option that sets the number of messages that may wait to be written to each peer;
+     * {@code 0}, the default, writes every message on the sending thread
+     */
+    public static final String QUEUE_CAPACITY_OPTION = "send.queue.capacity";
+
+    private final List<InetSocketAddress> addressList;
+    private final ConcurrentMap<InetSocketAddress, Sender> senders;
+    private final ConcurrentMap<InetSocketAddress, OutboundQueue> queues;
+    private final TrafficStats stats;
+    private final int queueCapacity;
+
+    /**
+     * Creates a pool for the peers in {@code addressList}. No connection is opened until it is requested.
+     * @param addressList addresses of the peers this pool is allowed to connect to
+     * @throws NullPointerException if {@code addressList} is null
+     */
+    public ConnectionPool(List<InetSocketAddress> addressList)
+    {
+        this(addressList, null);
+    }
+
+    /**
+     * Creates a pool whose connections record their traffic in {@code stats}
+     * @param addressList addresses of the peers this pool is allowed to connect to
+     * @param stats counters to record into, or {@code null} to record nothing
+     * @throws NullPointerException if {@code addressList} is null
+     */
+    public ConnectionPool(List<InetSocketAddress> addressList, TrafficStats stats)
+    {
+        this(addressList, stats, 0);
+    }
+
+    /**
+     * Creates a pool that queues up to {@code queueCapacity} messages per peer, each queue drained by its own
+     * writer thread
+     * @param addressList addresses of the peers this pool is allowed to connect to
+     * @param stats counters to record into, or {@code null} to record nothing
+     * @param queueCapacity messages that may wait for each peer, or {@code 0} to write on the sending thread
+     * @throws NullPointerException if {@code addressList} is null
+     * @throws IllegalArgumentException if {@code queueCapacity} is negative
+     */
+    public ConnectionPool(List<InetSocketAddress> addressList, TrafficStats stats, int queueCapacity)
+    {
+        if (addressList == null)
+            throw new NullPointerException("Address list passed to ConnectionPool cannot be null");
+        if (queueCapacity < 0)
+            throw new IllegalArgumentException("Queue capacity cannot be negative");
+        this.addressList = addressList;
+        this.senders = new ConcurrentHashMap<>(addressList.size());
+        this.queues = new ConcurrentHashMap<>(addressList.size());
+        this.stats = stats;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Returns the connection to {@code addr}, opening it if this is the first request for that peer
+     * @param addr address of the peer
+     * @return {@code Sender} connected to {@code addr}
+     * @throws IllegalStateException if the connection cannot be opened
+     */
+    public Sender get(InetSocketAddress addr)
+    {
+        return senders.computeIfAbsent(addr, a -> new Sender(a, stats));
+    }
+
+    /**
+     * Checks whether messages to each peer are queued and written by a writer thread
+     * @return {@code true} if this pool was created with a queue capacity, else {@code false}
+     */
+    public boolean isQueued()
+    {
+        return queueCapacity > 0;
+    }
+
+    private OutboundQueue queue(InetSocketAddress addr)
+    {
+        return queues.computeIfAbsent(addr, a -> new OutboundQueue(get(a), queueCapacity, "Writer-" + a.getPort()));
+    }
+
+    /**
+     * Sends {@code m} to {@code addr}. If this pool queues messages, waits only while the queue for
+     * {@code addr} is full.
+     * @param addr address of the peer
+     * @param m message to be sent
+     * @throws IllegalStateException if the connection cannot be opened or writing to it has failed
+     */
+    public void send(InetSocketAddress addr, Message m)
+    {
+        if (isQueued())
+            queue(addr).put(m);
+        else
+            get(addr).send(m);
+    }
+
+    /**
+     * Sends a payload carrying {@code data} to {@code addr}. Without send queues the frame is encoded straight
+     * from the value; with them a message has to be created to sit in the queue.
+     * @param addr address of the peer
+     * @param data value to be sent
+     * @throws IllegalStateException if the connection cannot be opened or writing to it has failed
+     */
+    public void sendPayload(InetSocketAddress addr, int data)
+    {
+        if (isQueued())
+            queue(addr).put(new Payload(data));
+        else
+            get(addr).sendPayload(data);
+    }
+
+    /**
+     * Sends a payload carrying {@code data} followed by {@code padding} filler bytes to {@code addr}, as
+     * {@link #sendPayload(InetSocketAddress, int)} does
+     * @param addr address of the peer
+     * @param data value to be sent
+     * @param padding number of filler bytes after the value
+     * @throws IllegalStateException if the connection cannot be opened or writing to it has failed
+     */
+    public void sendPayload(InetSocketAddress addr, int data, int padding)
+    {
+        if (isQueued())
+            queue(addr).put(new PaddedPayload(data, padding));
+        else
+            get(addr).sendPayload(data, padding);
+    }
+
+    /**
+     * Sends {@code m} to {@code addr} only if that can be done without waiting for the peer to catch up.
+     * A pool that does not queue messages always sends.
+     * @param addr address of the peer
+     * @param m message to be sent
+     * @return {@code true} if {@code m} was sent or queued, {@code false} if the queue for {@code addr} is full
+     * @throws IllegalStateException if the connection cannot be opened or writing to it has failed
+     */
+    public boolean trySend(InetSocketAddress addr, Message m)
+    {
+        if (isQueued())
+            return queue(addr).offer(m);
+        get(addr).send(m);
+        return true;
+    }
+
+    /**
+     * Checks whether a message to {@code addr} could be sent right now without waiting
+     * @param addr address of the peer
+     * @return {@code false} if the queue for {@code addr} is full, else {@code true}
+     */
+    public boolean canAccept(InetSocketAddress addr)
+    {
+        if (!isQueued())
+            return true;
+        OutboundQueue q = queues.get(addr);
+        return q == null || q.remainingCapacity() > 0;
+    }
+
+    /**
+     * Sends {@code m} to every peer in the pool, using the same connections as any earlier messages.
+     * Since each peer is served over a single connection, {@code m} is guaranteed to arrive after
+     * everything sent to that peer before it.
+     * @param m message to be sent
+     * @throws IllegalStateException if sending to any of the peers fails
+     */
+    public void broadcast(Message m)
+    {
+        for(InetSocketAddress a: addressList)
+        {
+            try
+            {
+                send(a, m);
+            }
+            catch(IllegalStateException e)
+            {
+                LOGGER.log(Level.WARNING, e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Closes all the connections opened so far, after writing out anything still queued for them.
+     * Peers see this as the end of the stream.
+     */
+    public void close()
+    {
+        for(OutboundQueue q: queues.values())
+        {
+            try
+            {
+                q.close();
+            }
+            catch(IllegalStateException e)
+            {
+                LOGGER.log(Level.WARNING, e.getMessage());
+            }
+        }
+        queues.clear();
+        for(Sender s: senders.values())
+        {
+            try
+            {
+                s.close();
+            }
+            catch(IllegalStateException e)
+            {
+                LOGGER.log(Level.WARNING, e.getMessage());
+            }
+        }
+        senders.clear();
+    }
+}
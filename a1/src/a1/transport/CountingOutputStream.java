@@ -0,0 +1,37 @@
+package a1.transport;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes bytes through to another stream, keeping a running count of how many were written
+ */
+final class CountingOutputStream extends FilterOutputStream
+{
+    private long count = 0;
+
+    CountingOutputStream(OutputStream out)
+    {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    long getCount()
+    {
+        return count;
+    }
+}
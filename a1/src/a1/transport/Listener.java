@@ -1,9 +1,13 @@
 package a1.transport;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,9 +23,11 @@ public abstract class Listener implements Runnable {
 	{
 		try
 		{
-			sock = new ServerSocket(port);
+			// Backed by a channel so that subclasses can also drive it through a Selector
+			sock = ServerSocketChannel.open().socket();
 			if (reuse)
 				sock.setReuseAddress(reuse);
+			sock.bind(new InetSocketAddress(port));
 		}
 		catch(IllegalArgumentException | IOException e)
 		{
@@ -46,6 +52,11 @@ public abstract class Listener implements Runnable {
         return true;
     }
 
+	protected boolean isClosed()
+	{
+		return this.closed.get();
+	}
+
 	public boolean close()
 	{
 	    if (this.closed.get())
@@ -76,13 +87,27 @@ public abstract class Listener implements Runnable {
 			while (!closed.get())
 			{
 				Socket s = sock.accept();
-				handleClient(s);
+				try
+				{
+					handleClient(s);
+				}
+				catch (RejectedExecutionException e)
+				{
+					// The connection would otherwise stay open, leaving the peer waiting on it
+					LOGGER.log(Level.WARNING, "Closing connection from " + s.getInetAddress() + ": " + e.getMessage());
+					closeQuietly(s);
+				}
 			}
 		}
 		catch (SocketException e)
         {
             LOGGER.log(Level.INFO, "Remote host disconnected");
         }
+		catch (ClosedChannelException e)
+		{
+			// The channel-backed socket reports close() from another thread this way
+			LOGGER.log(Level.INFO, "Listener closed");
+		}
 		catch(IOException e) {
 			LOGGER.log(Level.SEVERE, e.toString(), e);
 		}
@@ -92,4 +117,16 @@ public abstract class Listener implements Runnable {
                 LOGGER.log(Level.WARNING, "Unable to close the underlying socket");
         }
 	}
+
+	private static void closeQuietly(Socket s)
+	{
+		try
+		{
+			s.close();
+		}
+		catch(IOException e)
+		{
+			LOGGER.log(Level.WARNING, e.toString(), e);
+		}
+	}
 }
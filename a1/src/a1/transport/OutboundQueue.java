@@ -0,0 +1,143 @@
+package a1.transport;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import a1.messages.Done;
+import a1.messages.Message;
+
+/**
+ * A bounded queue of outgoing messages for one peer, drained onto its {@link Sender} by a dedicated writer
+ * thread. Producers only wait when this peer's queue is full, so a slow or stalled peer throttles traffic to
+ * itself without holding up traffic to anyone else; {@link #offer(Message)} lets a producer check for room
+ * and go elsewhere instead. The writer flushes only when the queue runs empty, so a burst of messages goes
+ * out in as few socket writes as possible.
+ */
+public final class OutboundQueue
+{
+    private static final Logger LOGGER = Logger.getLogger(OutboundQueue.class.getName());
+    private static final long FAILURE_CHECK_MILLIS = 100;
+
+    // Marks the end of the queue; compared by identity, never written
+    private static final Message CLOSE = new Done();
+
+    private final Sender sender;
+    private final BlockingQueue<Message> queue;
+    private final Thread writer;
+    private volatile IllegalStateException failure;
+
+    /**
+     * Starts a writer thread for {@code sender}
+     * @param sender connection to write the queued messages to
+     * @param capacity number of messages that may wait in the queue
+     * @param name name of the writer thread
+     * @throws IllegalArgumentException if {@code capacity} is less than 1
+     */
+    public OutboundQueue(Sender sender, int capacity, String name)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Queue capacity must be >= 1");
+        this.sender = sender;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drain, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private void drain()
+    {
+        try
+        {
+            while (true)
+            {
+                Message m = queue.take();
+                while (m != null && m != CLOSE)
+                {
+                    sender.write(m);
+                    m = queue.poll();
+                }
+                sender.flush();
+                if (m == CLOSE)
+                    return;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            failure = new IllegalStateException("Writer interrupted");
+            Thread.currentThread().interrupt();
+        }
+        catch (IllegalStateException e)
+        {
+            LOGGER.log(Level.WARNING, e.getMessage());
+            failure = e;
+        }
+    }
+
+    /**
+     * Queues {@code m}, waiting for room if the queue is full
+     * @param m message to be sent
+     * @throws IllegalStateException if the writer has failed, or if interrupted while waiting
+     */
+    public void put(Message m)
+    {
+        try
+        {
+            while (!queue.offer(m, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                // A failed writer no longer drains the queue
+                if (failure != null)
+                    throw failure;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for room in the queue");
+        }
+    }
+
+    /**
+     * Queues {@code m} only if there is room for it right away
+     * @param m message to be sent
+     * @return {@code true} if {@code m} was queued, {@code false} if the queue is full
+     * @throws IllegalStateException if the writer has failed
+     */
+    public boolean offer(Message m)
+    {
+        if (failure != null)
+            throw failure;
+        return queue.offer(m);
+    }
+
+    /**
+     * Returns the number of messages that can be queued without waiting
+     * @return free slots in the queue
+     */
+    public int remainingCapacity()
+    {
+        return queue.remainingCapacity();
+    }
+
+    /**
+     * Waits for every queued message to be written, then stops the writer. The connection is left open.
+     * @throws IllegalStateException if the writer failed before everything was written
+     */
+    public void close()
+    {
+        try
+        {
+            put(CLOSE);
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while draining the queue");
+        }
+        if (failure != null)
+            throw failure;
+    }
+}
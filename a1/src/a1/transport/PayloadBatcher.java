@@ -0,0 +1,157 @@
+package a1.transport;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import a1.messages.PayloadBatch;
+
+/**
+ * Collects payload values per destination and sends them as {@link PayloadBatch} frames over a
+ * {@link ConnectionPool}. A batch is sent as soon as it holds {@code batchSize} values, or once its oldest
+ * value has waited for {@code lingerMillis}, whichever comes first.
+ */
+public final class PayloadBatcher
+{
+    private static final Logger LOGGER = Logger.getLogger(PayloadBatcher.class.getName());
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final ConcurrentMap<InetSocketAddress, Batch> batches;
+    private final ScheduledExecutorService lingerTimer;
+
+    /**
+     * Creates a batcher that sends over the connections in {@code pool}
+     * @param pool connections to send the batches over
+     * @param batchSize number of values after which a batch is sent
+     * @param lingerMillis longest time a value may wait before its batch is sent; 0 waits until the batch is full
+     * or {@link #flush()} is called
+     * @throws IllegalArgumentException if {@code batchSize} is less than 1 or more than
+     * {@link PayloadBatch#MAX_COUNT}, or {@code lingerMillis} is negative
+     */
+    public PayloadBatcher(ConnectionPool pool, int batchSize, long lingerMillis)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be >= 1");
+        if (batchSize > PayloadBatch.MAX_COUNT)
+            throw new IllegalArgumentException("Batch size must be <= " + PayloadBatch.MAX_COUNT);
+        if (lingerMillis < 0)
+            throw new IllegalArgumentException("Linger time cannot be negative");
+
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.batches = new ConcurrentHashMap<>();
+
+        if (lingerMillis > 0)
+        {
+            this.lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "PayloadBatcher-linger");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(1, lingerMillis / 2);
+            this.lingerTimer.scheduleAtFixedRate(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            this.lingerTimer = null;
+        }
+    }
+
+    /**
+     * Adds {@code value} to the batch for {@code destination}, sending the batch if it becomes full
+     * @param destination address of the peer the value is meant for
+     * @param value payload value
+     * @throws IllegalStateException if the batch had to be sent and sending failed
+     */
+    public void add(InetSocketAddress destination, int value)
+    {
+        Batch b = batches.computeIfAbsent(destination, Batch::new);
+        synchronized (b)
+        {
+            if (b.count == 0)
+                b.firstAdded = System.nanoTime();
+            b.values[b.count++] = value;
+            if (b.count == batchSize)
+                send(b);
+        }
+    }
+
+    /**
+     * Sends every batch that holds at least one value
+     * @throws IllegalStateException if sending any of the batches fails
+     */
+    public void flush()
+    {
+        for(Batch b: batches.values())
+        {
+            synchronized (b)
+            {
+                if (b.count > 0)
+                    send(b);
+            }
+        }
+    }
+
+    /**
+     * Sends all pending batches and stops the linger timer. The underlying pool is left open.
+     * @throws IllegalStateException if sending any of the batches fails
+     */
+    public void close()
+    {
+        if (lingerTimer != null)
+            lingerTimer.shutdownNow();
+        flush();
+    }
+
+    private void flushExpired()
+    {
+        long now = System.nanoTime();
+        for(Batch b: batches.values())
+        {
+            synchronized (b)
+            {
+                if (b.count > 0 && now - b.firstAdded >= lingerNanos)
+                {
+                    try
+                    {
+                        send(b);
+                    }
+                    catch(IllegalStateException e)
+                    {
+                        LOGGER.log(Level.WARNING, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    // Must be called with the monitor of b held
+    private void send(Batch b)
+    {
+        PayloadBatch m = new PayloadBatch(b.values, b.count);
+        b.count = 0;
+        pool.send(b.destination, m);
+    }
+
+    private final class Batch
+    {
+        private final InetSocketAddress destination;
+        private final int[] values;
+        private int count;
+        private long firstAdded;
+
+        Batch(InetSocketAddress destination)
+        {
+            this.destination = destination;
+            this.values = new int[batchSize];
+        }
+    }
+}
@@ -2,42 +2,89 @@ package a1.transport;
 
 import java.net.*;
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import a1.messages.Message;
+import a1.messages.MessageCodec;
+import a1.messages.PayloadHandler;
 
 public abstract class Receiver {
 
     private static final Logger LOGGER = Logger.getLogger(Receiver.class.getName());
 
     protected Socket sock;
-    protected ObjectInputStream ins;
+    protected DataInputStream ins;
+    private CountingInputStream counter;
+    private final TrafficStats stats;
+    private PayloadHandler payloadHandler;
+    private final FrameBlocker blocker = new FrameBlocker();
 
     public Receiver(Socket sock)
+    {
+        this(sock, null);
+    }
+
+    /**
+     * Wraps an accepted connection, recording every frame read from it in {@code stats}
+     * @param sock socket of the accepted connection
+     * @param stats counters to record into, or {@code null} to record nothing
+     * @throws IllegalStateException if the socket's input stream cannot be opened
+     */
+    public Receiver(Socket sock, TrafficStats stats)
     {
         this.sock = sock;
+        this.stats = stats;
         try
         {
-            this.ins = new ObjectInputStream(sock.getInputStream());
+            this.counter = new CountingInputStream(new BufferedInputStream(sock.getInputStream()));
+            this.ins = new DataInputStream(counter);
         }
         catch(IOException e)
         {
             LOGGER.log(Level.SEVERE, e.toString(), e);
             throw new IllegalStateException("Cannot get input stream from socket");
         }
+        if (stats != null)
+            stats.inboundOpened();
+    }
+
+    /**
+     * Hands the values of payload frames to {@code handler} instead of returning them from {@link #receive()},
+     * so that no message is created for them. Must be called before the first {@code receive()}.
+     * @param handler receiver of payload values, or {@code null} to return payloads as messages
+     */
+    public void setPayloadHandler(PayloadHandler handler)
+    {
+        this.payloadHandler = handler;
     }
 
+    /**
+     * Reads the next message from the connection, blocking until one is available. If a payload handler is
+     * set, payload frames are passed to it as they are read and only other messages are returned.
+     * @return the received message, or {@code null} if the remote end closed the connection
+     * @throws IllegalStateException if the message cannot be read
+     */
     public Message receive()
     {
         try
         {
-            Message m = (Message) ins.readObject();
-            return m;
+            while (true)
+            {
+                long before = counter.getCount();
+                // On a work-stealing pool, let the pool make up for this worker while it waits on the socket
+                Message m = ForkJoinTask.inForkJoinPool() && ins.available() == 0
+                        ? blocker.read() : MessageCodec.read(ins, payloadHandler);
+                if (stats != null)
+                    stats.recordReceived(counter.getCount() - before);
+                if (m != null)
+                    return m;
+            }
         }
-        catch (ClassNotFoundException e)
+        catch (EOFException e)
         {
-            LOGGER.log(Level.SEVERE, e.toString(), e);
-            throw new IllegalStateException("Invalid Message received");
+            return null;
         }
         catch(IOException e)
         {
@@ -58,7 +105,62 @@ public abstract class Receiver {
             LOGGER.log(Level.SEVERE, e.toString(), e);
             throw new IllegalStateException("Unable to close");
         }
+        finally
+        {
+            if (stats != null)
+                stats.inboundClosed();
+        }
     }
 
     public abstract void handleMessage(Message m, InetAddress addr);
+
+    /**
+     * Reads one frame inside {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}. Reused for every frame.
+     */
+    private final class FrameBlocker implements ForkJoinPool.ManagedBlocker
+    {
+        private Message message;
+        private IOException failure;
+        private boolean done;
+
+        Message read() throws IOException
+        {
+            message = null;
+            failure = null;
+            done = false;
+            try
+            {
+                ForkJoinPool.managedBlock(this);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a frame");
+            }
+            if (failure != null)
+                throw failure;
+            return message;
+        }
+
+        @Override
+        public boolean block()
+        {
+            try
+            {
+                message = MessageCodec.read(ins, payloadHandler);
+            }
+            catch (IOException e)
+            {
+                failure = e;
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable()
+        {
+            return done;
+        }
+    }
 }
@@ -0,0 +1,123 @@
+package a1.transport;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the executors that run a node's {@link Receiver}s, one task per accepted connection, as selected by
+ * {@link #POOL_OPTION}:
+ * <ul>
+ * <li>{@value #FIXED}: a pool with one thread per peer and a bounded queue for connections beyond that. Once the
+ * queue is full, handing off a connection waits, which holds up the accept loop. A connection handed off after
+ * the pool has been shut down is rejected with a {@link RejectedExecutionException}.</li>
+ * <li>{@value #VIRTUAL}: a new thread for every connection. On a runtime with virtual threads (Java 21 and later)
+ * these are virtual threads; otherwise they are platform threads from a cached pool.</li>
+ * <li>{@value #WORK_STEALING}: a {@link ForkJoinPool} with one worker per processor. A receiver that has to wait
+ * for the socket does so through {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}, so the pool
+ * only adds workers while receivers are actually blocked, and retires them once they go idle.</li>
+ * </ul>
+ */
+public final class ReceiverExecutors
+{
+    private static final Logger LOGGER = Logger.getLogger(ReceiverExecutors.class.getName());
+
+    /**
+     * Config file option that selects the executor receivers run on
+     */
+    public static final String POOL_OPTION = "receiver.pool";
+    public static final String FIXED = "fixed";
+    public static final String VIRTUAL = "virtual";
+    public static final String WORK_STEALING = "workstealing";
+
+    private ReceiverExecutors() {}
+
+    /**
+     * Reads the kind of executor selected in a config file
+     * @param options options as returned by {@link a1.util.ConfigReader#readOptions(String)}
+     * @return one of {@link #FIXED}, {@link #VIRTUAL} or {@link #WORK_STEALING}; {@link #FIXED} if not set
+     * @throws IllegalArgumentException if the option is set to anything else
+     */
+    public static String getKind(Map<String, String> options)
+    {
+        String kind = options.get(POOL_OPTION);
+        if (kind == null)
+            return FIXED;
+        if (!kind.equals(FIXED) && !kind.equals(VIRTUAL) && !kind.equals(WORK_STEALING))
+            throw new IllegalArgumentException("Option " + POOL_OPTION + " must be one of " + FIXED + ", "
+                    + VIRTUAL + " or " + WORK_STEALING + ", not " + kind);
+        return kind;
+    }
+
+    /**
+     * Creates an executor of the given kind
+     * @param kind one of {@link #FIXED}, {@link #VIRTUAL} or {@link #WORK_STEALING}
+     * @param peers number of peers expected to hold a connection open at the same time
+     * @return the new executor
+     * @throws IllegalArgumentException if {@code kind} is not a known kind of executor
+     */
+    public static ExecutorService create(String kind, int peers)
+    {
+        switch (kind)
+        {
+            case FIXED:
+                return newFixed(peers);
+            case VIRTUAL:
+                return newPerConnection();
+            case WORK_STEALING:
+                return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+            default:
+                throw new IllegalArgumentException("Unknown receiver pool " + kind);
+        }
+    }
+
+    private static ExecutorService newFixed(int peers)
+    {
+        int n = Math.max(1, peers);
+        return new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(n),
+                (r, executor) -> {
+                    try
+                    {
+                        while (!executor.isShutdown())
+                        {
+                            if (executor.getQueue().offer(r, 100, TimeUnit.MILLISECONDS))
+                                return;
+                            LOGGER.log(Level.FINE, "Receivers busy, waiting to hand off connection");
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    // Dropping the task silently would leave its connection open with nobody reading it
+                    throw new RejectedExecutionException("Receivers shut down before the connection could be handed off");
+                });
+    }
+
+    private static ExecutorService newPerConnection()
+    {
+        // Looked up reflectively so that the sources still build for Java 8
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            ThreadFactory factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            LOGGER.log(Level.INFO, "Virtual threads are not available, using a platform thread per connection");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
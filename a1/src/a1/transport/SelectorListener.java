@@ -0,0 +1,337 @@
+package a1.transport;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import a1.messages.Message;
+import a1.messages.MessageCodec;
+import a1.messages.PayloadHandler;
+
+/**
+ * A {@link Listener} that services the listening socket and every accepted connection from a single thread,
+ * using a non-blocking {@link Selector}. Messages are decoded as soon as complete frames are available and
+ * handed to {@link #handleMessage(Message, InetAddress)} on the selector thread, so handlers must not block.
+ * With a {@link PayloadHandler} set, payload frames are decoded straight from the connection's buffer into the
+ * handler, and nothing is allocated for them.
+ */
+public abstract class SelectorListener extends Listener
+{
+    private static final Logger LOGGER = Logger.getLogger(SelectorListener.class.getName());
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Config file option that selects the transport used by a node's listener
+     */
+    public static final String TRANSPORT_OPTION = "transport";
+    /**
+     * Value of {@link #TRANSPORT_OPTION} that selects a {@code SelectorListener}
+     */
+    public static final String SELECTOR_TRANSPORT = "selector";
+
+    private final Selector selector;
+    private TrafficStats stats;
+    private PayloadHandler payloadHandler;
+
+    public SelectorListener(int port, boolean reuse)
+    {
+        super(port, reuse);
+        try
+        {
+            this.selector = Selector.open();
+            ServerSocketChannel channel = sock.getChannel();
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.SEVERE, e.toString(), e);
+            throw new IllegalStateException("Selector failed to initialize");
+        }
+    }
+
+    public SelectorListener(int port)
+    {
+        this(port, false);
+    }
+
+    /**
+     * Records every frame decoded by this listener, and the number of open connections, in {@code stats}.
+     * Must be called before the listener is started.
+     * @param stats counters to record into, or {@code null} to record nothing
+     */
+    public void setTrafficStats(TrafficStats stats)
+    {
+        this.stats = stats;
+    }
+
+    /**
+     * Hands the values of payload frames to {@code handler}, on the selector thread, instead of decoding them
+     * into messages for {@link #handleMessage(Message, InetAddress)}. Must be called before the listener is started.
+     * @param handler receiver of payload values, or {@code null} to deliver payloads as messages
+     */
+    public void setPayloadHandler(PayloadHandler handler)
+    {
+        this.payloadHandler = handler;
+    }
+
+    /**
+     * Checks whether the options read from a config file ask for a {@code SelectorListener}
+     * @param options options as returned by {@link a1.util.ConfigReader#readOptions(String)}
+     * @return {@code true} if {@link #TRANSPORT_OPTION} is set to {@link #SELECTOR_TRANSPORT}, else {@code false}
+     */
+    public static boolean isConfigured(Map<String, String> options)
+    {
+        return SELECTOR_TRANSPORT.equals(options.get(TRANSPORT_OPTION));
+    }
+
+    /**
+     * Decides whether a newly accepted connection should be serviced
+     * @param addr address of the remote end of the connection
+     * @return {@code true} if messages should be read from the connection, {@code false} to close it
+     */
+    protected abstract boolean acceptClient(InetAddress addr);
+
+    /**
+     * Called on the selector thread for every message received on any of the accepted connections
+     * @param m the received message
+     * @param addr address of the remote end of the connection that delivered {@code m}
+     */
+    public abstract void handleMessage(Message m, InetAddress addr);
+
+    /**
+     * Registers the connection with the selector if {@link #acceptClient(InetAddress)} allows it, else closes it
+     * @param s socket of an accepted connection; must be backed by a {@link SocketChannel}
+     */
+    @Override
+    public void handleClient(Socket s)
+    {
+        SocketChannel channel = s.getChannel();
+        try
+        {
+            if (s.getInetAddress() != null && acceptClient(s.getInetAddress()))
+            {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new Connection(s.getInetAddress()));
+                if (stats != null)
+                    stats.inboundOpened();
+            }
+            else
+            {
+                LOGGER.log(Level.INFO, "Connection request is invalid. Rejecting");
+                channel.close();
+            }
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, e.toString(), e);
+        }
+    }
+
+    @Override
+    protected boolean closeOther()
+    {
+        selector.wakeup();
+        return true;
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (!sock.isClosed())
+            {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                    {
+                        SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+                        if (channel != null)
+                            handleClient(channel.socket());
+                    }
+                    else if (key.isReadable())
+                    {
+                        read(key);
+                    }
+                }
+            }
+        }
+        catch(ClosedSelectorException e)
+        {
+            LOGGER.log(Level.INFO, "Selector closed");
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.SEVERE, e.toString(), e);
+        }
+        finally
+        {
+            if (!close())
+                LOGGER.log(Level.WARNING, "Unable to close the underlying socket");
+            closeSelector();
+        }
+    }
+
+    private void read(SelectionKey key)
+    {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection c = (Connection) key.attachment();
+        int n;
+        try
+        {
+            n = channel.read(c.buffer);
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, e.toString(), e);
+            n = -1;
+        }
+
+        c.buffer.flip();
+        try
+        {
+            while (c.buffer.hasRemaining())
+            {
+                int frameStart = c.buffer.position();
+                Message m;
+                try
+                {
+                    m = MessageCodec.read(c.ins, payloadHandler);
+                }
+                catch(EOFException e)
+                {
+                    // Only part of the frame has arrived so far
+                    c.buffer.position(frameStart);
+                    break;
+                }
+                if (stats != null)
+                    stats.recordReceived(c.buffer.position() - frameStart);
+                if (m != null)
+                    handleMessage(m, c.source);
+            }
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.SEVERE, e.toString(), e);
+            n = -1;
+        }
+        c.buffer.compact();
+
+        if (n < 0)
+        {
+            key.cancel();
+            if (stats != null)
+                stats.inboundClosed();
+            try
+            {
+                channel.close();
+            }
+            catch(IOException e)
+            {
+                LOGGER.log(Level.WARNING, e.toString(), e);
+            }
+        }
+        else if (!c.buffer.hasRemaining())
+        {
+            // A single frame is larger than the buffer
+            c.grow();
+        }
+    }
+
+    private void closeSelector()
+    {
+        for (SelectionKey key : selector.keys())
+        {
+            try
+            {
+                key.channel().close();
+            }
+            catch(IOException e)
+            {
+                LOGGER.log(Level.WARNING, e.toString(), e);
+            }
+        }
+        try
+        {
+            selector.close();
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(Level.WARNING, e.toString(), e);
+        }
+    }
+
+    /**
+     * Per-connection read state: the bytes received but not yet decoded, and a stream view over them
+     * that reports end of stream when the buffered bytes run out
+     */
+    private static final class Connection
+    {
+        private final InetAddress source;
+        private final DataInputStream ins;
+        private ByteBuffer buffer;
+
+        Connection(InetAddress source)
+        {
+            this.source = source;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            this.ins = new DataInputStream(new InputStream()
+            {
+                @Override
+                public int read()
+                {
+                    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len)
+                {
+                    if (len == 0)
+                        return 0;
+                    int n = Math.min(len, buffer.remaining());
+                    if (n == 0)
+                        return -1;
+                    buffer.get(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public long skip(long n)
+                {
+                    // The default skips by reading into a scratch array allocated on every call
+                    int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+                    buffer.position(buffer.position() + skipped);
+                    return skipped;
+                }
+            });
+        }
+
+        void grow()
+        {
+            ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+    }
+}
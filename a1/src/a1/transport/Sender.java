@@ -7,37 +7,154 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import a1.messages.Message;
+import a1.messages.MessageCodec;
 
 public final class Sender
 {
 	private final static Logger LOGGER = Logger.getLogger(Sender.class.getName());
 
 	private Socket sock;
-	private ObjectOutputStream outs;
+	private DataOutputStream outs;
+	private CountingOutputStream counter;
+	private final InetSocketAddress addr;
+	private final TrafficStats stats;
 	
 	public Sender(InetSocketAddress addr)
 	{
+		this(addr, null);
+	}
+
+	/**
+	 * Opens a connection to {@code addr} that records every frame it sends in {@code stats}
+	 * @param addr address of the peer
+	 * @param stats counters to record into, or {@code null} to record nothing
+	 * @throws IllegalStateException if the connection cannot be opened
+	 */
+	public Sender(InetSocketAddress addr, TrafficStats stats)
+	{
+		this.addr = addr;
+		this.stats = stats;
 		try
 		{
             Socket s;
-            ObjectOutputStream o;
+            CountingOutputStream c;
 			s = new Socket(addr.getAddress(), addr.getPort());
-            o = new ObjectOutputStream(s.getOutputStream());
+            c = new CountingOutputStream(new BufferedOutputStream(s.getOutputStream()));
             this.sock = s;
-            this.outs = o;
+            this.counter = c;
+            this.outs = new DataOutputStream(c);
 		}
 		catch(IOException e)
         {
             LOGGER.log(Level.SEVERE, e.toString(), e);
             throw new IllegalStateException("Unable to open the socket connection");
         }
+		if (stats != null)
+			stats.outboundOpened();
+	}
+
+	/**
+	 * Encodes {@code m} with {@link MessageCodec} and writes it to the connection
+	 * @param m message to be sent
+	 * @throws IllegalStateException if writing to the socket fails
+	 */
+	public synchronized void send(Message m)
+	{
+		long start = stats != null ? System.nanoTime() : 0;
+		long before = counter.getCount();
+		try
+		{
+			MessageCodec.write(m, outs);
+			outs.flush();
+		}
+		catch(IOException e)
+		{
+			LOGGER.log(Level.SEVERE, e.toString(), e);
+			throw new IllegalStateException("Failed to write to socket");
+		}
+		if (stats != null)
+			stats.recordSent(addr, counter.getCount() - before, System.nanoTime() - start);
+	}
+
+	/**
+	 * Sends a {@link a1.messages.Payload} carrying {@code data}, encoded straight from the value
+	 * @param data value to be sent
+	 * @throws IllegalStateException if writing to the socket fails
+	 */
+	public synchronized void sendPayload(int data)
+	{
+		long start = stats != null ? System.nanoTime() : 0;
+		long before = counter.getCount();
+		try
+		{
+			MessageCodec.writePayload(data, outs);
+			outs.flush();
+		}
+		catch(IOException e)
+		{
+			LOGGER.log(Level.SEVERE, e.toString(), e);
+			throw new IllegalStateException("Failed to write to socket");
+		}
+		if (stats != null)
+			stats.recordSent(addr, counter.getCount() - before, System.nanoTime() - start);
 	}
 
-	public void send(Message m)
+	/**
+	 * Sends a {@link a1.messages.PaddedPayload} carrying {@code data}, encoded straight from the values
+	 * @param data value to be sent
+	 * @param padding number of filler bytes after the value
+	 * @throws IllegalStateException if writing to the socket fails
+	 */
+	public synchronized void sendPayload(int data, int padding)
 	{
+		long start = stats != null ? System.nanoTime() : 0;
+		long before = counter.getCount();
 		try
 		{
-			outs.writeObject(m);
+			MessageCodec.writePaddedPayload(data, padding, outs);
+			outs.flush();
+		}
+		catch(IOException e)
+		{
+			LOGGER.log(Level.SEVERE, e.toString(), e);
+			throw new IllegalStateException("Failed to write to socket");
+		}
+		if (stats != null)
+			stats.recordSent(addr, counter.getCount() - before, System.nanoTime() - start);
+	}
+
+	/**
+	 * Encodes {@code m} into the connection's buffer without flushing it, so that several messages can
+	 * share one socket write. The message may not reach the peer until {@link #flush()} is called.
+	 * @param m message to be sent
+	 * @throws IllegalStateException if writing to the socket fails
+	 */
+	public synchronized void write(Message m)
+	{
+		long start = stats != null ? System.nanoTime() : 0;
+		long before = counter.getCount();
+		try
+		{
+			MessageCodec.write(m, outs);
+		}
+		catch(IOException e)
+		{
+			LOGGER.log(Level.SEVERE, e.toString(), e);
+			throw new IllegalStateException("Failed to write to socket");
+		}
+		if (stats != null)
+			stats.recordSent(addr, counter.getCount() - before, System.nanoTime() - start);
+	}
+
+	/**
+	 * Sends everything written with {@link #write(Message)} so far
+	 * @throws IllegalStateException if writing to the socket fails
+	 */
+	public synchronized void flush()
+	{
+		try
+		{
+			outs.flush();
 		}
 		catch(IOException e)
 		{
@@ -69,7 +186,7 @@ public final class Sender
 		}
 	}
 
-	public void close()
+	public synchronized void close()
 	{
 		try
 		{
@@ -81,6 +198,11 @@ public final class Sender
 			LOGGER.log(Level.SEVERE, e.toString(), e);
 			throw new IllegalStateException("Unable to close");
 		}
+		finally
+		{
+			if (stats != null)
+				stats.outboundClosed();
+		}
 	}
 
 }
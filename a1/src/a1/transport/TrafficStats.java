@@ -0,0 +1,113 @@
+package a1.transport;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import a1.messages.Stats;
+import a1.util.LatencyHistogram;
+
+/**
+ * Live traffic counters for one node: frames and bytes in each direction, the number of open connections,
+ * and a {@link LatencyHistogram} of send latency per peer. Senders and receivers given a {@code TrafficStats}
+ * record into it as they go; {@link #snapshot(int)} turns everything recorded since the previous snapshot
+ * into a {@link Stats} frame and starts a new interval.
+ */
+public final class TrafficStats
+{
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final AtomicInteger outboundConnections = new AtomicInteger(0);
+    private final AtomicInteger inboundConnections = new AtomicInteger(0);
+    private final ConcurrentMap<InetSocketAddress, LatencyHistogram> sendLatency = new ConcurrentHashMap<>();
+
+    private long intervalStart = System.nanoTime();
+
+    /**
+     * Records one frame written and flushed to a peer
+     * @param peer address the frame was sent to
+     * @param bytes encoded size of the frame
+     * @param nanos time taken to write and flush the frame
+     */
+    public void recordSent(InetSocketAddress peer, long bytes, long nanos)
+    {
+        framesSent.increment();
+        bytesSent.add(bytes);
+        sendLatency.computeIfAbsent(peer, p -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Records one frame decoded from an inbound connection
+     * @param bytes encoded size of the frame
+     */
+    public void recordReceived(long bytes)
+    {
+        framesReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    public void outboundOpened()
+    {
+        outboundConnections.incrementAndGet();
+    }
+
+    public void outboundClosed()
+    {
+        outboundConnections.decrementAndGet();
+    }
+
+    public void inboundOpened()
+    {
+        inboundConnections.incrementAndGet();
+    }
+
+    public void inboundClosed()
+    {
+        inboundConnections.decrementAndGet();
+    }
+
+    /**
+     * Summarizes the traffic recorded since the previous call and resets the interval counters.
+     * Connection counts are not reset, since they describe the current state rather than the interval.
+     * @param port listening port of this node, identifying it to the Collator
+     * @return the summary of the interval that just ended
+     */
+    public synchronized Stats snapshot(int port)
+    {
+        long now = System.nanoTime();
+        int intervalMillis = (int) Math.min(Integer.MAX_VALUE, (now - intervalStart) / 1000000);
+        intervalStart = now;
+
+        LatencyHistogram all = new LatencyHistogram();
+        String slowestPeer = "";
+        long slowestP99 = -1;
+        for (Map.Entry<InetSocketAddress, LatencyHistogram> e : sendLatency.entrySet())
+        {
+            LatencyHistogram h = e.getValue();
+            if (h.getCount() == 0)
+                continue;
+            long p99 = h.getPercentile(99);
+            if (p99 > slowestP99)
+            {
+                slowestP99 = p99;
+                slowestPeer = e.getKey().getHostString() + ":" + e.getKey().getPort();
+            }
+            all.add(h);
+            h.reset();
+        }
+
+        return new Stats(port, intervalMillis,
+                framesSent.sumThenReset(), bytesSent.sumThenReset(),
+                framesReceived.sumThenReset(), bytesReceived.sumThenReset(),
+                outboundConnections.get(), inboundConnections.get(),
+                all.getPercentile(50) / NANOS_PER_MICRO, all.getPercentile(99) / NANOS_PER_MICRO,
+                all.getMax() / NANOS_PER_MICRO, slowestPeer, Math.max(0, slowestP99) / NANOS_PER_MICRO);
+    }
+}
@@ -3,7 +3,9 @@ package a1.util;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class ConfigReader
 {
@@ -32,6 +34,8 @@ public final class ConfigReader
             String line;
             while ((line = buf.readLine()) != null)
             {
+                if (isOption(line))
+                    continue;
                 try
                 {
                     InetSocketAddress a = TokenParser.parseAsAddress(line, resolve);
@@ -52,5 +56,72 @@ public final class ConfigReader
         return addresses;
     }
 
+    /**
+     * Reads the options in a config file. An option is a line of the form {@code key=value}; all other lines
+     * are ignored, so options can be mixed freely with the addresses read by {@link #read(String, boolean, boolean)}.
+     * @param path The path to config file
+     * @return A map from option keys to their values, both with surrounding whitespace removed. null is returned
+     * if the file cannot be read
+     * @throws IllegalArgumentException if {@code path} is inaccessible
+     * @throws NullPointerException if {@code path} is null
+     */
+    public static Map<String, String> readOptions(String path)
+    {
+        File f = TokenParser.parseAsPath(path);
+        Map<String, String> options = new HashMap<>();
+
+        try (
+                FileInputStream fin = new FileInputStream(f);
+                InputStreamReader ins = new InputStreamReader(fin);
+                BufferedReader buf = new BufferedReader(ins)
+        ) {
+            String line;
+            while ((line = buf.readLine()) != null)
+            {
+                if (isOption(line))
+                {
+                    int sep = line.indexOf('=');
+                    options.put(line.substring(0, sep).trim(), line.substring(sep + 1).trim());
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            return null;
+        }
+
+        return options;
+    }
+
+    /**
+     * Looks up an integer option, falling back to a default when the option is absent
+     * @param options options as returned by {@link #readOptions(String)}
+     * @param key key of the option
+     * @param defaultValue value returned if {@code options} has no value for {@code key}
+     * @param lower Lower bound for the value (inclusive)
+     * @param upper Upper bound for the value (inclusive)
+     * @return the parsed value of the option, or {@code defaultValue} if it is absent
+     * @throws IllegalArgumentException if the value cannot be parsed as an integer, or if it exceeds bounds {@code lower} - {@code upper}
+     */
+    public static int getIntOption(Map<String, String> options, String key, int defaultValue, int lower, int upper)
+    {
+        String value = options.get(key);
+        if (value == null)
+            return defaultValue;
+        try
+        {
+            return TokenParser.parseAsInt(value, lower, upper);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException(String.format("Invalid value for option %1$s: %2$s", key, e.getMessage()));
+        }
+    }
+
+    private static boolean isOption(String line)
+    {
+        return line.indexOf('=') > 0;
+    }
+
 
 }
@@ -0,0 +1,51 @@
+package a1.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the IP address of a peer to its position(s) in an address list. Built once from resolved
+ * addresses, so identifying the source of a connection is a hash lookup on the raw address, with no
+ * DNS lookups or string comparisons. Several peers may share a host; they are returned in list order.
+ */
+public final class PeerIndex
+{
+    private static final int[] NONE = new int[0];
+
+    private final Map<InetAddress, int[]> indices;
+
+    /**
+     * Builds the index for {@code addressList}. Unresolved addresses are left out.
+     * @param addressList list of peer addresses, as returned by {@link ConfigReader#read(String, boolean, boolean)}
+     * @throws NullPointerException if {@code addressList} is null
+     */
+    public PeerIndex(List<InetSocketAddress> addressList)
+    {
+        this.indices = new HashMap<>(addressList.size() * 2);
+        for (int i = 0; i < addressList.size(); i++)
+        {
+            InetAddress addr = addressList.get(i).getAddress();
+            if (addr == null)
+                continue;
+            int[] old = indices.getOrDefault(addr, NONE);
+            int[] updated = new int[old.length + 1];
+            System.arraycopy(old, 0, updated, 0, old.length);
+            updated[old.length] = i;
+            indices.put(addr, updated);
+        }
+    }
+
+    /**
+     * Returns the positions in the address list of all the peers on host {@code addr}
+     * @param addr IP address of the host
+     * @return positions of the matching peers in increasing order; empty if there are none. The returned
+     * array must not be modified.
+     */
+    public int[] lookup(InetAddress addr)
+    {
+        return indices.getOrDefault(addr, NONE);
+    }
+}
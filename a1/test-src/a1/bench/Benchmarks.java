@@ -0,0 +1,27 @@
+package a1.bench;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the a1 micro-benchmarks and prints ops/s and allocation per operation for each of them.
+ * Pass benchmark group names ({@code codec}, {@code loopback}) to run only those; with no arguments all run.
+ * The {@code receivers} group opens up to a thousand connections and only runs when named.
+ *
+ * Run with: run-a1/bench.sh [codec] [loopback] [receivers]
+ */
+public class Benchmarks
+{
+    public static void main(String[] args) throws Exception
+    {
+        List<String> groups = Arrays.asList(args);
+        if (groups.isEmpty() || groups.contains("codec") || groups.contains("loopback"))
+            Harness.printHeader();
+        if (groups.isEmpty() || groups.contains("codec"))
+            CodecBenchmark.run();
+        if (groups.isEmpty() || groups.contains("loopback"))
+            LoopbackBenchmark.run();
+        if (groups.contains("receivers"))
+            ReceiverPoolBenchmark.run();
+    }
+}
@@ -0,0 +1,124 @@
+package a1.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import a1.messages.Message;
+import a1.messages.MessageCodec;
+import a1.messages.Payload;
+import a1.messages.PayloadBatch;
+import a1.messages.PayloadHandler;
+import a1.messages.Summary;
+
+/**
+ * Encodes and decodes {@link Payload} and {@link Summary} with {@link MessageCodec}, entirely in memory.
+ * The streams are reused across operations, so the allocation reported is that of the codec itself.
+ * The {@code primitive} and {@code handler} variants measure the payload path that works on plain values
+ * and should allocate nothing per operation.
+ */
+final class CodecBenchmark
+{
+    private static final int OPS = 1000000;
+
+    // Decoded messages are published here so the JIT cannot optimise the decoding away
+    static volatile Message sink;
+    static volatile long valueSink;
+
+    private static final class SummingHandler implements PayloadHandler
+    {
+        private long count;
+        private long sum;
+
+        @Override
+        public void onPayload(int data)
+        {
+            count++;
+            sum += data;
+        }
+
+        @Override
+        public void onPayloads(int count, long sum)
+        {
+            this.count += count;
+            this.sum += sum;
+        }
+    }
+
+    private CodecBenchmark() {}
+
+    // Every helper takes its stream from the caller so that it escapes; with a stream local to the loop
+    // the JIT can prove the bytes are never read and drop the work being measured
+
+    private static void encode(Message m, int ops, ByteArrayOutputStream bytes) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < ops; i++)
+        {
+            MessageCodec.write(m, out);
+            bytes.reset();
+        }
+    }
+
+    private static void encodePrimitive(int data, int ops, ByteArrayOutputStream bytes) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < ops; i++)
+        {
+            MessageCodec.writePayload(data + i, out);
+            bytes.reset();
+        }
+    }
+
+    private static ByteArrayInputStream encoded(Message m) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        MessageCodec.write(m, new DataOutputStream(bytes));
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    private static void decode(ByteArrayInputStream source, int ops) throws IOException
+    {
+        DataInputStream in = new DataInputStream(source);
+        for (int i = 0; i < ops; i++)
+        {
+            source.reset();
+            sink = MessageCodec.read(in);
+        }
+    }
+
+    private static void decodeIntoHandler(ByteArrayInputStream source, int ops) throws IOException
+    {
+        DataInputStream in = new DataInputStream(source);
+        SummingHandler handler = new SummingHandler();
+        for (int i = 0; i < ops; i++)
+        {
+            source.reset();
+            if (MessageCodec.read(in, handler) != null)
+                throw new IllegalStateException("Payload was not passed to the handler");
+        }
+        valueSink = handler.count + handler.sum;
+    }
+
+    static void run() throws Exception
+    {
+        Payload payload = new Payload(123456789);
+        PayloadBatch batch = new PayloadBatch(new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, 16);
+        Summary summary = new Summary(45001, 1, 25000, 24990, 123456789012L, -123456789012L);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        ByteArrayInputStream encodedPayload = encoded(payload);
+        ByteArrayInputStream encodedBatch = encoded(batch);
+        ByteArrayInputStream encodedSummary = encoded(summary);
+
+        Harness.measure("codec.payload.encode", OPS, ops -> encode(payload, ops, bytes));
+        Harness.measure("codec.payload.encode.primitive", OPS, ops -> encodePrimitive(123456789, ops, bytes));
+        Harness.measure("codec.payload.decode", OPS, ops -> decode(encodedPayload, ops));
+        Harness.measure("codec.payload.decode.handler", OPS, ops -> decodeIntoHandler(encodedPayload, ops));
+        Harness.measure("codec.batch16.decode", OPS, ops -> decode(encodedBatch, ops));
+        Harness.measure("codec.batch16.decode.handler", OPS, ops -> decodeIntoHandler(encodedBatch, ops));
+        Harness.measure("codec.summary.encode", OPS, ops -> encode(summary, ops, bytes));
+        Harness.measure("codec.summary.decode", OPS, ops -> decode(encodedSummary, ops));
+    }
+}
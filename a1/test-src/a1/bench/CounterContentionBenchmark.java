@@ -0,0 +1,126 @@
+package a1.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the cost of the receive-side accounting in {@link a1.nodes.Process} when many receiver threads
+ * update the counters at once: a shared {@code AtomicInteger}/{@code AtomicLong} pair against a
+ * {@code LongAdder} pair. Every thread performs the same number of updates, as if it were delivering payloads.
+ *
+ * Run with: java -cp out a1.bench.CounterContentionBenchmark [updatesPerThread]
+ */
+public class CounterContentionBenchmark
+{
+    private static final int[] RECEIVERS = {8, 32, 128};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+
+    private interface Counters
+    {
+        void onPayload(int data);
+        long total();
+    }
+
+    private static final class AtomicCounters implements Counters
+    {
+        private final AtomicInteger received = new AtomicInteger(0);
+        private final AtomicLong receivedSummation = new AtomicLong(0);
+
+        @Override
+        public void onPayload(int data)
+        {
+            received.incrementAndGet();
+            receivedSummation.addAndGet(data);
+        }
+
+        @Override
+        public long total()
+        {
+            return received.get();
+        }
+    }
+
+    private static final class AdderCounters implements Counters
+    {
+        private final LongAdder received = new LongAdder();
+        private final LongAdder receivedSummation = new LongAdder();
+
+        @Override
+        public void onPayload(int data)
+        {
+            received.increment();
+            receivedSummation.add(data);
+        }
+
+        @Override
+        public long total()
+        {
+            return received.sum();
+        }
+    }
+
+    private static long runOnce(Counters counters, int receivers, int updatesPerThread) throws InterruptedException
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[receivers];
+        for (int t = 0; t < receivers; t++)
+        {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                for (int i = 0; i < updatesPerThread; i++)
+                    counters.onPayload(seed + i);
+            });
+            threads[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads)
+            t.join();
+        long elapsed = System.nanoTime() - begin;
+
+        if (counters.total() != (long) receivers * updatesPerThread)
+            throw new IllegalStateException("Lost updates: " + counters.total());
+        return elapsed;
+    }
+
+    private static double medianUpdatesPerSecond(boolean striped, int receivers, int updatesPerThread) throws InterruptedException
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            runOnce(striped ? new AdderCounters() : new AtomicCounters(), receivers, updatesPerThread);
+
+        double[] rates = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            long nanos = runOnce(striped ? new AdderCounters() : new AtomicCounters(), receivers, updatesPerThread);
+            rates[i] = (double) receivers * updatesPerThread / nanos * 1e9;
+        }
+        Arrays.sort(rates);
+        return rates[ITERATIONS / 2];
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int updatesPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("%1$-10s %2$18s %3$18s %4$8s", "Receivers", "Atomic (upd/s)", "LongAdder (upd/s)", "Ratio"));
+        for (int receivers : RECEIVERS)
+        {
+            double atomic = medianUpdatesPerSecond(false, receivers, updatesPerThread);
+            double adder = medianUpdatesPerSecond(true, receivers, updatesPerThread);
+            System.out.println(String.format("%1$-10d %2$18.0f %3$18.0f %4$8.2f", receivers, atomic, adder, adder / atomic));
+        }
+    }
+}
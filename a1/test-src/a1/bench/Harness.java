@@ -0,0 +1,87 @@
+package a1.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * A minimal stand-in for JMH: runs an operation for a few warm-up iterations, then for a number of measured
+ * iterations, and reports the median throughput together with the bytes allocated per operation. Allocation is
+ * read from the JVM's per-thread allocation counters, summed over every live thread so that work done on helper
+ * threads (receivers, listeners) is included.
+ */
+final class Harness
+{
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+    private static final String FORMAT = "%1$-32s %2$14s %3$12s %4$12s";
+
+    /**
+     * Work being measured; each call performs {@code ops} operations and returns once they have all completed
+     */
+    interface Operation
+    {
+        void run(int ops) throws Exception;
+    }
+
+    private Harness() {}
+
+    static void printHeader()
+    {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format(FORMAT, "Benchmark", "ops/s", "B/op", "MB/s alloc"));
+    }
+
+    /**
+     * Measures {@code op} and prints one line of results
+     * @param name name printed in the first column
+     * @param opsPerIteration number of operations in each iteration
+     * @param op the work to measure
+     * @throws Exception if the operation fails
+     */
+    static void measure(String name, int opsPerIteration, Operation op) throws Exception
+    {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            op.run(opsPerIteration);
+
+        double[] rates = new double[ITERATIONS];
+        long allocated = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            long bytesBefore = allocatedBytes();
+            long begin = System.nanoTime();
+            op.run(opsPerIteration);
+            long elapsed = System.nanoTime() - begin;
+            long bytesAfter = allocatedBytes();
+
+            rates[i] = (double) opsPerIteration / elapsed * 1e9;
+            allocated += bytesAfter - bytesBefore;
+            totalNanos += elapsed;
+        }
+        Arrays.sort(rates);
+
+        boolean allocationKnown = allocatedBytes() >= 0;
+        System.out.println(String.format(FORMAT, name,
+                String.format("%.0f", rates[ITERATIONS / 2]),
+                allocationKnown ? String.format("%.1f", (double) allocated / ((long) ITERATIONS * opsPerIteration)) : "n/a",
+                allocationKnown ? String.format("%.1f", allocated / 1e6 / (totalNanos / 1e9)) : "n/a"));
+    }
+
+    /**
+     * Returns the bytes allocated so far by all live threads, or -1 if the JVM does not track allocation
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+            return -1;
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            if (bytes > 0)
+                total += bytes;
+        return total;
+    }
+}
@@ -0,0 +1,180 @@
+package a1.bench;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import a1.messages.Message;
+import a1.messages.Payload;
+import a1.messages.PayloadHandler;
+import a1.transport.Listener;
+import a1.transport.Receiver;
+import a1.transport.Sender;
+
+/**
+ * Measures the transport over loopback: {@link Sender#send(Message)} on one connection, with a
+ * {@link Receiver} draining it on the other end, and the accept rate of a {@link Listener}. An operation
+ * completes when the receiving side has seen it, so the numbers cover the whole path. The {@code primitive}
+ * variant sends with {@link Sender#sendPayload(int)} to a receiver with a {@link PayloadHandler}, the path
+ * a Process takes for payloads.
+ */
+final class LoopbackBenchmark
+{
+    private static final int SEND_OPS = 200000;
+    private static final int ACCEPT_OPS = 2000;
+
+    private LoopbackBenchmark() {}
+
+    /**
+     * Listens on an ephemeral port and hands accepted connections to a callback
+     */
+    static final class BenchListener extends Listener
+    {
+        private final java.util.function.Consumer<Socket> onAccept;
+
+        BenchListener(java.util.function.Consumer<Socket> onAccept)
+        {
+            super(0, true);
+            this.onAccept = onAccept;
+        }
+
+        int getPort()
+        {
+            return sock.getLocalPort();
+        }
+
+        @Override
+        public void handleClient(Socket s)
+        {
+            onAccept.accept(s);
+        }
+    }
+
+    private static final class CountingReceiver extends Receiver implements Runnable
+    {
+        private final AtomicLong received;
+
+        CountingReceiver(Socket s, AtomicLong received, boolean primitive)
+        {
+            super(s);
+            this.received = received;
+            if (primitive)
+            {
+                setPayloadHandler(new PayloadHandler()
+                {
+                    @Override
+                    public void onPayload(int data)
+                    {
+                        received.lazySet(received.get() + 1);
+                    }
+
+                    @Override
+                    public void onPayloads(int count, long sum)
+                    {
+                        received.lazySet(received.get() + count);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void handleMessage(Message m, InetAddress addr)
+        {
+            received.lazySet(received.get() + 1);
+        }
+
+        @Override
+        public void run()
+        {
+            Message m;
+            while ((m = receive()) != null)
+                handleMessage(m, sock.getInetAddress());
+            close();
+        }
+    }
+
+    private static void awaitCount(AtomicLong counter, long target)
+    {
+        while (counter.get() < target)
+            LockSupport.parkNanos(10000);
+    }
+
+    private static void sendReceive(boolean primitive) throws Exception
+    {
+        AtomicLong received = new AtomicLong(0);
+        BenchListener listener = new BenchListener(s -> new Thread(new CountingReceiver(s, received, primitive), "bench-receiver").start());
+        new Thread(listener, "bench-listener").start();
+        Sender sender = new Sender(new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getPort()));
+        try
+        {
+            if (primitive)
+            {
+                Harness.measure("loopback.payload.send.primitive", SEND_OPS, ops -> {
+                    long target = received.get() + ops;
+                    for (int i = 0; i < ops; i++)
+                        sender.sendPayload(i);
+                    awaitCount(received, target);
+                });
+            }
+            else
+            {
+                Harness.measure("loopback.payload.send", SEND_OPS, ops -> {
+                    long target = received.get() + ops;
+                    for (int i = 0; i < ops; i++)
+                        sender.send(new Payload(i));
+                    awaitCount(received, target);
+                });
+            }
+        }
+        finally
+        {
+            sender.close();
+            listener.close();
+        }
+    }
+
+    private static void accept() throws Exception
+    {
+        AtomicLong accepted = new AtomicLong(0);
+        BenchListener listener = new BenchListener(s -> {
+            try
+            {
+                s.close();
+            }
+            catch (java.io.IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+            accepted.incrementAndGet();
+        });
+        new Thread(listener, "bench-listener").start();
+        InetSocketAddress addr = new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getPort());
+        try
+        {
+            Harness.measure("listener.accept", ACCEPT_OPS, ops -> {
+                long target = accepted.get() + ops;
+                for (int i = 0; i < ops; i++)
+                {
+                    Socket s = new Socket(addr.getAddress(), addr.getPort());
+                    // Reset instead of a normal close so thousands of connections do not pile up in TIME_WAIT
+                    s.setSoLinger(true, 0);
+                    s.close();
+                }
+                awaitCount(accepted, target);
+            });
+        }
+        finally
+        {
+            listener.close();
+        }
+    }
+
+    static void run() throws Exception
+    {
+        sendReceive(false);
+        sendReceive(true);
+        accept();
+    }
+}
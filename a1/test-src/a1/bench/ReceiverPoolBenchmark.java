@@ -0,0 +1,226 @@
+package a1.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import a1.messages.Message;
+import a1.messages.PayloadHandler;
+import a1.transport.Receiver;
+import a1.transport.ReceiverExecutors;
+import a1.transport.Sender;
+
+/**
+ * Compares the executors of {@link ReceiverExecutors} as a Process would use them: one listener accepts a
+ * connection from each of {@code peers} senders and runs a {@link Receiver} per connection on the executor under
+ * test. A few sender threads then deliver payloads in rounds of {@value #MESSAGES_PER_ROUND} to randomly chosen
+ * connections, and the run ends once every payload has been received.
+ *
+ * For every configuration it reports the median throughput, the peak number of live threads, and the context
+ * switches per message. Context switches are read from /proc/self/task, so they are only available on Linux and
+ * only cover threads still alive at the end of the run; every thread taking part is kept alive until then.
+ */
+final class ReceiverPoolBenchmark
+{
+    private static final int[] PEERS = {10, 100, 1000};
+    private static final String[] KINDS = {ReceiverExecutors.FIXED, ReceiverExecutors.VIRTUAL, ReceiverExecutors.WORK_STEALING};
+    private static final int MESSAGES = 200000;
+    private static final int MESSAGES_PER_ROUND = 5;
+    private static final int SENDER_THREADS = 4;
+    private static final int WARMUP_ITERATIONS = 1;
+    private static final int ITERATIONS = 3;
+    private static final String FORMAT = "%1$-8s %2$-14s %3$12s %4$10s %5$14s";
+
+    private ReceiverPoolBenchmark() {}
+
+    private static final class CountingReceiver extends Receiver implements Runnable
+    {
+        CountingReceiver(Socket s, LongAdder received)
+        {
+            super(s);
+            setPayloadHandler(new PayloadHandler()
+            {
+                @Override
+                public void onPayload(int data)
+                {
+                    received.increment();
+                }
+
+                @Override
+                public void onPayloads(int count, long sum)
+                {
+                    received.add(count);
+                }
+            });
+        }
+
+        @Override
+        public void handleMessage(Message m, InetAddress addr)
+        {
+        }
+
+        @Override
+        public void run()
+        {
+            Message m;
+            while ((m = receive()) != null)
+                handleMessage(m, sock.getInetAddress());
+            close();
+        }
+    }
+
+    /**
+     * Returns the voluntary and involuntary context switches of every live thread, or -1 if they are not available
+     */
+    private static long contextSwitches()
+    {
+        long total = 0;
+        try (DirectoryStream<Path> tasks = Files.newDirectoryStream(Paths.get("/proc/self/task")))
+        {
+            for (Path task : tasks)
+            {
+                try
+                {
+                    for (String line : Files.readAllLines(task.resolve("status")))
+                        if (line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:"))
+                            total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                }
+                catch (IOException e)
+                {
+                    // The thread exited while being read
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return -1;
+        }
+        return total;
+    }
+
+    private static void awaitCount(LongAdder counter, long target)
+    {
+        while (counter.sum() < target)
+            LockSupport.parkNanos(100000);
+    }
+
+    /**
+     * Sends one iteration's payloads and waits for them to arrive
+     * @return elapsed nanoseconds and context switches, in that order
+     */
+    private static long[] runOnce(List<Sender> senders, LongAdder received) throws InterruptedException
+    {
+        long target = received.sum() + MESSAGES;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(SENDER_THREADS);
+        SplittableRandom root = new SplittableRandom(42);
+        for (int t = 0; t < SENDER_THREADS; t++)
+        {
+            SplittableRandom random = root.split();
+            int rounds = MESSAGES / MESSAGES_PER_ROUND / SENDER_THREADS;
+            Thread thread = new Thread(() -> {
+                try
+                {
+                    start.await();
+                    for (int i = 0; i < rounds; i++)
+                    {
+                        Sender s = senders.get(random.nextInt(senders.size()));
+                        for (int j = 0; j < MESSAGES_PER_ROUND; j++)
+                            s.sendPayload(j);
+                    }
+                    // Stay alive until the context switches have been counted
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }, "bench-sender-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+
+        long switchesBefore = contextSwitches();
+        long begin = System.nanoTime();
+        start.countDown();
+        awaitCount(received, target);
+        long elapsed = System.nanoTime() - begin;
+        long switchesAfter = contextSwitches();
+
+        release.countDown();
+        for (Thread t : threads)
+            t.join();
+        return new long[] {elapsed, switchesBefore < 0 || switchesAfter < 0 ? -1 : switchesAfter - switchesBefore};
+    }
+
+    private static void measure(int peers, String kind) throws Exception
+    {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        ExecutorService executor = ReceiverExecutors.create(kind, peers);
+        LongAdder received = new LongAdder();
+        LoopbackBenchmark.BenchListener listener = new LoopbackBenchmark.BenchListener(
+                s -> executor.execute(new CountingReceiver(s, received)));
+        new Thread(listener, "bench-listener").start();
+        InetSocketAddress addr = new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getPort());
+        List<Sender> senders = new ArrayList<>(peers);
+        try
+        {
+            for (int i = 0; i < peers; i++)
+                senders.add(new Sender(addr));
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++)
+                runOnce(senders, received);
+
+            threadBean.resetPeakThreadCount();
+            double[] rates = new double[ITERATIONS];
+            long[] switches = new long[ITERATIONS];
+            for (int i = 0; i < ITERATIONS; i++)
+            {
+                long[] result = runOnce(senders, received);
+                rates[i] = (double) MESSAGES / result[0] * 1e9;
+                switches[i] = result[1];
+            }
+            Arrays.sort(rates);
+            Arrays.sort(switches);
+            long medianSwitches = switches[ITERATIONS / 2];
+            System.out.println(String.format(FORMAT, peers, kind,
+                    String.format("%.0f", rates[ITERATIONS / 2]),
+                    threadBean.getPeakThreadCount(),
+                    medianSwitches < 0 ? "n/a" : String.format("%.3f", (double) medianSwitches / MESSAGES)));
+        }
+        finally
+        {
+            for (Sender s : senders)
+                s.close();
+            listener.close();
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    static void run() throws Exception
+    {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format(FORMAT, "Peers", "Pool", "msg/s", "threads", "ctx sw/msg"));
+        for (int peers : PEERS)
+            for (String kind : KINDS)
+                measure(peers, kind);
+    }
+}
@@ -0,0 +1,211 @@
+package a1.messages;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+public class MessageCodecTest
+{
+    private static byte[] encode(Message m) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageCodec.write(m, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static Message decode(byte[] b) throws IOException
+    {
+        return MessageCodec.read(new DataInputStream(new ByteArrayInputStream(b)));
+    }
+
+    @Test
+    public void payloadRoundTrip() throws IOException
+    {
+        byte[] b = encode(new Payload(-123456789));
+        Assert.assertEquals(1 + Integer.BYTES, b.length);
+
+        Message m = decode(b);
+        Assert.assertEquals(MessageType.PAYLOAD, m.getType());
+        Assert.assertEquals(-123456789, ((Payload) m).getData());
+    }
+
+    private static final class RecordingHandler implements PayloadHandler
+    {
+        private long count;
+        private long sum;
+
+        @Override
+        public void onPayload(int data)
+        {
+            count++;
+            sum += data;
+        }
+
+        @Override
+        public void onPayloads(int count, long sum)
+        {
+            this.count += count;
+            this.sum += sum;
+        }
+    }
+
+    @Test
+    public void primitivePayloadMatchesMessage() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MessageCodec.writePayload(-123456789, out);
+        Assert.assertArrayEquals(encode(new Payload(-123456789)), bytes.toByteArray());
+
+        bytes.reset();
+        MessageCodec.writePaddedPayload(42, 5000, out);
+        Assert.assertArrayEquals(encode(new PaddedPayload(42, 5000)), bytes.toByteArray());
+    }
+
+    @Test
+    public void payloadsDecodeIntoHandler() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MessageCodec.writePayload(7, out);
+        MessageCodec.write(new PaddedPayload(-3, 100), out);
+        MessageCodec.write(new PayloadBatch(new int[] {10, 20, 30}, 3), out);
+        MessageCodec.write(new Done(), out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        RecordingHandler handler = new RecordingHandler();
+        Assert.assertNull(MessageCodec.read(in, handler));
+        Assert.assertNull(MessageCodec.read(in, handler));
+        Assert.assertNull(MessageCodec.read(in, handler));
+        Assert.assertEquals(MessageType.DONE, MessageCodec.read(in, handler).getType());
+        Assert.assertEquals(5, handler.count);
+        Assert.assertEquals(64, handler.sum);
+        Assert.assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void summaryRoundTrip() throws IOException
+    {
+        byte[] b = encode(new Summary(45001, 3, 25000, 24990, Long.MAX_VALUE, Long.MIN_VALUE));
+        Assert.assertEquals(1 + 4 * Integer.BYTES + 2 * Long.BYTES, b.length);
+
+        Summary s = (Summary) decode(b);
+        Assert.assertEquals(45001, s.getPort());
+        Assert.assertEquals(3, s.getProcesses());
+        Assert.assertEquals(25000, s.getSent());
+        Assert.assertEquals(24990, s.getReceived());
+        Assert.assertEquals(Long.MAX_VALUE, s.getSentSummation());
+        Assert.assertEquals(Long.MIN_VALUE, s.getReceivedSummation());
+    }
+
+    @Test
+    public void statsRoundTrip() throws IOException
+    {
+        Stats s = (Stats) decode(encode(new Stats(45001, 1003, 5000, 25000, 4900, 24500, 3, 4, 12, 250, 9000,
+                "localhost:45002", 310)));
+        Assert.assertEquals(45001, s.getPort());
+        Assert.assertEquals(1003, s.getIntervalMillis());
+        Assert.assertEquals(5000, s.getFramesSent());
+        Assert.assertEquals(25000, s.getBytesSent());
+        Assert.assertEquals(4900, s.getFramesReceived());
+        Assert.assertEquals(24500, s.getBytesReceived());
+        Assert.assertEquals(3, s.getOutboundConnections());
+        Assert.assertEquals(4, s.getInboundConnections());
+        Assert.assertEquals(12, s.getLatencyP50Micros());
+        Assert.assertEquals(250, s.getLatencyP99Micros());
+        Assert.assertEquals(9000, s.getLatencyMaxMicros());
+        Assert.assertEquals("localhost:45002", s.getSlowestPeer());
+        Assert.assertEquals(310, s.getSlowestPeerP99Micros());
+    }
+
+    @Test
+    public void payloadBatchRoundTrip() throws IOException
+    {
+        int[] values = {1, -2, Integer.MAX_VALUE, Integer.MAX_VALUE, 7};
+        byte[] b = encode(new PayloadBatch(values, 4));
+        Assert.assertEquals(1 + Integer.BYTES + 4 * Integer.BYTES, b.length);
+
+        PayloadBatch batch = (PayloadBatch) decode(b);
+        Assert.assertEquals(4, batch.getCount());
+        for(int i = 0; i < batch.getCount(); i++)
+            Assert.assertEquals(values[i], batch.getData(i));
+        Assert.assertEquals(1L - 2L + 2L * Integer.MAX_VALUE, batch.getSum());
+    }
+
+    @Test
+    public void oversizedPayloadBatchIsRejected() throws IOException
+    {
+        // A frame claiming more values than any batch holds, without the values
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(encode(new PayloadBatch(new int[0], 0))[0]);
+        out.writeInt(PayloadBatch.MAX_COUNT + 1);
+        byte[] b = bytes.toByteArray();
+
+        // Rejected as soon as the count is read, not by running out of input while waiting for the values
+        for (PayloadHandler handler : new PayloadHandler[] {null, new RecordingHandler()})
+        {
+            try
+            {
+                MessageCodec.read(new DataInputStream(new ByteArrayInputStream(b)), handler);
+                Assert.fail("Batch of " + (PayloadBatch.MAX_COUNT + 1) + " values was accepted");
+            }
+            catch (EOFException e)
+            {
+                Assert.fail("Batch count was not checked before reading the values");
+            }
+            catch (IOException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void initiateRoundTrip() throws IOException
+    {
+        byte[] b = encode(new Initiate(17, 4, 2));
+        Assert.assertEquals(1 + 3 * Integer.BYTES, b.length);
+
+        Initiate m = (Initiate) decode(b);
+        Assert.assertEquals(17, m.getPosition());
+        Assert.assertEquals(4, m.getSummaryFanout());
+        Assert.assertEquals(2, m.getDoneFanout());
+    }
+
+    @Test
+    public void completionRoundTrip() throws IOException
+    {
+        long[] counts = {0, 25000, Long.MAX_VALUE};
+        byte[] b = encode(new Completion(true, counts));
+        Assert.assertEquals(1 + 1 + Integer.BYTES + 3 * Long.BYTES, b.length);
+
+        Completion m = (Completion) decode(b);
+        Assert.assertTrue(m.isTotal());
+        Assert.assertArrayEquals(counts, m.getCounts());
+    }
+
+    @Test
+    public void controlMessagesAreOneByte() throws IOException
+    {
+        Message[] messages = {new Ready(), new Done()};
+        for(Message m: messages)
+        {
+            byte[] b = encode(m);
+            Assert.assertEquals(1, b.length);
+            Assert.assertEquals(m.getType(), decode(b).getType());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownTagIsRejected() throws IOException
+    {
+        decode(new byte[]{(byte) 0x7f});
+    }
+}
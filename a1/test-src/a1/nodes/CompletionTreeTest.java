@@ -0,0 +1,51 @@
+package a1.nodes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompletionTreeTest
+{
+    @Test
+    public void everyProcessButTheRootHasOneParent()
+    {
+        for (int fanout = 1; fanout <= 4; fanout++)
+        {
+            for (int processes = 1; processes <= 40; processes++)
+            {
+                int[] children = new int[processes];
+                Assert.assertEquals(CompletionTree.NONE, CompletionTree.parentOf(0, fanout));
+                for (int i = 1; i < processes; i++)
+                {
+                    int parent = CompletionTree.parentOf(i, fanout);
+                    Assert.assertTrue(parent >= 0 && parent < i);
+                    Assert.assertTrue(i >= CompletionTree.firstChildOf(parent, fanout));
+                    children[parent]++;
+                }
+                for (int i = 0; i < processes; i++)
+                    Assert.assertEquals(CompletionTree.childCount(i, fanout, processes), children[i]);
+            }
+        }
+    }
+
+    @Test
+    public void countsArePassedUpOnceTheSubtreeIsComplete()
+    {
+        // Process 1 of 5 with fanout 2 has children 3 and 4
+        CompletionTree tree = new CompletionTree(5);
+        Assert.assertNull(tree.addChild(new long[]{1, 1, 0, 0, 0}));
+        Assert.assertNull(tree.join(1, 2));
+        Assert.assertEquals(0, tree.getParent());
+        Assert.assertArrayEquals(new int[]{3, 4}, tree.getChildren());
+        Assert.assertNull(tree.addOwn(new long[]{2, 0, 2, 2, 2}));
+        Assert.assertArrayEquals(new long[]{4, 1, 2, 3, 2}, tree.addChild(new long[]{1, 0, 0, 1, 0}));
+    }
+
+    @Test
+    public void leafReportsItsOwnCounts()
+    {
+        CompletionTree tree = new CompletionTree(3);
+        Assert.assertNull(tree.join(2, 2));
+        Assert.assertEquals(0, tree.getChildren().length);
+        Assert.assertArrayEquals(new long[]{5, 7, 0}, tree.addOwn(new long[]{5, 7, 0}));
+    }
+}
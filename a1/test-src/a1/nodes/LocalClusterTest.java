@@ -0,0 +1,51 @@
+package a1.nodes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class LocalClusterTest
+{
+    // Below the usual ephemeral port range, so client sockets left in TIME_WAIT cannot collide with it
+    private static final int BASE_PORT = 29000;
+
+    private static Map<String, String> options(String... pairs)
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(Process.STATS_INTERVAL_OPTION, "0");
+        options.put("rounds", "200");
+        options.put("cluster.timeout.s", "60");
+        for (int i = 0; i < pairs.length; i += 2)
+            options.put(pairs[i], pairs[i + 1]);
+        return options;
+    }
+
+    @Test
+    public void flatClusterBalances() throws InterruptedException
+    {
+        Assert.assertTrue(LocalCluster.run(5, BASE_PORT, options(CompletionTree.FANOUT_OPTION, "0")));
+    }
+
+    @Test
+    public void treeClusterBalances() throws InterruptedException
+    {
+        Assert.assertTrue(LocalCluster.run(9, BASE_PORT + 100, options("transport", "selector",
+                SummaryTree.FANOUT_OPTION, "2", CompletionTree.FANOUT_OPTION, "3", "batch.size", "8")));
+    }
+
+    @Test
+    public void queuedClusterBalances() throws InterruptedException
+    {
+        Assert.assertTrue(LocalCluster.run(7, BASE_PORT + 200, options("send.queue.capacity", "4",
+                "messages.per.round", "20", "sender.threads", "3")));
+    }
+
+    @Test
+    public void workStealingReceiversBalance() throws InterruptedException
+    {
+        Assert.assertTrue(LocalCluster.run(6, BASE_PORT + 300, options("transport", "blocking",
+                "receiver.pool", "workstealing", "batch.size", "4")));
+    }
+}
@@ -0,0 +1,59 @@
+package a1.nodes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SummaryTreeTest
+{
+    @Test
+    public void flatModeReportsToCollator()
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            Assert.assertEquals(SummaryTree.COLLATOR, SummaryTree.parentOf(i, 0));
+            Assert.assertEquals(0, SummaryTree.childCount(i, 0, 10));
+        }
+        Assert.assertEquals(10, SummaryTree.rootCount(0, 10));
+    }
+
+    @Test
+    public void everyProcessIsCountedOnce()
+    {
+        for (int fanout = 1; fanout <= 5; fanout++)
+        {
+            for (int processes = 1; processes <= 50; processes++)
+            {
+                int[] children = new int[processes];
+                int roots = 0;
+                for (int i = 0; i < processes; i++)
+                {
+                    int parent = SummaryTree.parentOf(i, fanout);
+                    if (parent == SummaryTree.COLLATOR)
+                    {
+                        roots++;
+                    }
+                    else
+                    {
+                        Assert.assertTrue("Parent must come earlier in the list", parent < i);
+                        children[parent]++;
+                    }
+                }
+                Assert.assertEquals(SummaryTree.rootCount(fanout, processes), roots);
+                for (int i = 0; i < processes; i++)
+                    Assert.assertEquals(SummaryTree.childCount(i, fanout, processes), children[i]);
+            }
+        }
+    }
+
+    @Test
+    public void binaryTreeShape()
+    {
+        // Collator -> 0, 1; 0 -> 2, 3; 1 -> 4, 5; 2 -> 6
+        Assert.assertEquals(SummaryTree.COLLATOR, SummaryTree.parentOf(1, 2));
+        Assert.assertEquals(0, SummaryTree.parentOf(3, 2));
+        Assert.assertEquals(1, SummaryTree.parentOf(4, 2));
+        Assert.assertEquals(2, SummaryTree.parentOf(6, 2));
+        Assert.assertEquals(1, SummaryTree.childCount(2, 2, 7));
+        Assert.assertEquals(0, SummaryTree.childCount(3, 2, 7));
+    }
+}
@@ -0,0 +1,65 @@
+package a1.transport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+
+import a1.messages.Message;
+import a1.messages.MessageCodec;
+import a1.messages.Payload;
+
+public class ConnectionPoolTest
+{
+    private static final int MESSAGES = 10000;
+
+    @Test
+    public void queuedMessagesArriveInOrderBeforeClose() throws IOException
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            InetSocketAddress addr = new InetSocketAddress("localhost", server.getLocalPort());
+            ConnectionPool pool = new ConnectionPool(Collections.singletonList(addr), null, 8);
+            Assert.assertTrue(pool.isQueued());
+
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < MESSAGES; i++)
+                {
+                    if (!pool.trySend(addr, new Payload(i)))
+                        pool.send(addr, new Payload(i));
+                }
+                pool.close();
+            });
+            producer.start();
+
+            try (Socket s = server.accept(); DataInputStream ins = new DataInputStream(s.getInputStream()))
+            {
+                for (int i = 0; i < MESSAGES; i++)
+                {
+                    Message m = MessageCodec.read(ins);
+                    Assert.assertEquals(i, ((Payload) m).getData());
+                }
+                Assert.assertEquals(-1, ins.read());
+            }
+        }
+    }
+
+    @Test
+    public void unqueuedPoolAlwaysAccepts()
+    {
+        ConnectionPool pool = new ConnectionPool(Collections.emptyList());
+        Assert.assertFalse(pool.isQueued());
+        Assert.assertTrue(pool.canAccept(new InetSocketAddress("localhost", 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCapacityIsRejected()
+    {
+        new ConnectionPool(Collections.emptyList(), null, -1);
+    }
+}
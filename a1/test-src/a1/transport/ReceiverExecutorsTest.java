@@ -0,0 +1,89 @@
+package a1.transport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ReceiverExecutorsTest
+{
+    @Test
+    public void fixedPoolRejectsAHandOffWaitingWhenItShutsDown() throws InterruptedException
+    {
+        ExecutorService pool = ReceiverExecutors.create(ReceiverExecutors.FIXED, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable busy = () -> {
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        };
+        // One running, one queued: the next hand-off waits for room
+        pool.execute(busy);
+        pool.execute(busy);
+
+        Thread shutdown = new Thread(() -> {
+            try
+            {
+                Thread.sleep(300);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            pool.shutdown();
+        });
+        shutdown.start();
+        try
+        {
+            pool.execute(busy);
+            Assert.fail("Hand-off was dropped instead of rejected");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+        finally
+        {
+            release.countDown();
+            shutdown.join();
+            Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void listenerClosesARejectedConnection() throws IOException, InterruptedException
+    {
+        Listener listener = new Listener(0, true)
+        {
+            @Override
+            public void handleClient(Socket s)
+            {
+                throw new RejectedExecutionException("test");
+            }
+        };
+        Thread t = new Thread(listener);
+        t.start();
+        try (Socket client = new Socket())
+        {
+            client.connect(new InetSocketAddress("localhost", listener.sock.getLocalPort()));
+            client.setSoTimeout(5000);
+            Assert.assertEquals(-1, client.getInputStream().read());
+        }
+        finally
+        {
+            listener.close();
+            t.join(5000);
+        }
+    }
+}
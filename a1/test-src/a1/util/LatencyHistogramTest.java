@@ -0,0 +1,62 @@
+package a1.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void emptyHistogramReportsZero()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        Assert.assertEquals(0, h.getCount());
+        Assert.assertEquals(0, h.getPercentile(99));
+        Assert.assertEquals(0, h.getMax());
+    }
+
+    @Test
+    public void smallValuesAreExact()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int v = 0; v < 32; v++)
+            h.record(v);
+        Assert.assertEquals(32, h.getCount());
+        Assert.assertEquals(15, h.getPercentile(50));
+        Assert.assertEquals(31, h.getPercentile(100));
+        Assert.assertEquals(31, h.getMax());
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision()
+    {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++)
+            h.record(v * 1000);
+        assertWithin(50000000L, h.getPercentile(50));
+        assertWithin(99000000L, h.getPercentile(99));
+        Assert.assertEquals(100000000L, h.getMax());
+    }
+
+    @Test
+    public void addAndReset()
+    {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(100);
+        b.record(1000000);
+        a.add(b);
+        Assert.assertEquals(2, a.getCount());
+        Assert.assertEquals(1000000, a.getMax());
+
+        a.reset();
+        Assert.assertEquals(0, a.getCount());
+        Assert.assertEquals(0, a.getPercentile(50));
+    }
+
+    private static void assertWithin(long expected, long actual)
+    {
+        // 16 sub-buckets per power of two put every value within 1/16 of its bucket's lower bound
+        Assert.assertTrue("Expected about " + expected + " but was " + actual,
+                actual <= expected && actual >= expected - expected / 16);
+    }
+}
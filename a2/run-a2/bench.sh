@@ -0,0 +1,8 @@
+#!/usr/bin/env bash
+# Compiles a2 with its benchmarks and runs them: ./bench.sh [routing] [transfer] [hash] [store]
+set -e
+cd "$(dirname "$0")/.."
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+javac -d "$out" $(find src test-src/a2/bench -name '*.java')
+java -cp "$out" a2.bench.Benchmarks "$@"
@@ -2,14 +2,21 @@ package a2.chord.peer;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-
+import java.util.Set;
+
+/**
+ * The fingers of a peer, as an array of peers indexed by finger number. Finger {@code k} starts at
+ * {@code ownID + 2^k}, so the finger an ID starts is found from the distance to it rather than by searching.
+ *
+ * Instances are immutable: updates return a new table sharing the finger starts, so a table can be read from
+ * any thread without locking and always shows every finger of one version.
+ */
 final class FingerTable
 {
-    private List<ID> fingers;
-    private HashMap<ID, PeerInfo> fingerToPeerMap;
+    private final ID[] fingers;
+    private final PeerInfo[] peers;
     private final ID ownID;
 
     private static final BigInteger TWO = BigInteger.valueOf(2);
@@ -20,68 +27,141 @@ final class FingerTable
             throw new IllegalArgumentException("ID passed to FingerTable can't be null");
 
         this.ownID = ownID;
-        // the following is just the initial capacity
-        this.fingers = new ArrayList<>(ownID.sizeInBits());
-        this.fingerToPeerMap = new HashMap<>();
+        this.fingers = new ID[ownID.sizeInBits()];
 
         // Cache fingers to avoid calculating again
-        for (int k = 0; k < ownID.sizeInBits(); k++)
-            this.fingers.add(calculateFinger(k));
+        for (int k = 0; k < fingers.length; k++)
+            this.fingers[k] = calculateFinger(k);
 
-        this.fingers = Collections.unmodifiableList(this.fingers);
+        this.peers = new PeerInfo[fingers.length];
+        for (int k = 0; k < peers.length; k++)
+            this.peers[k] = PeerInfo.NULL_PEER;
+    }
 
-        for (int k = 0; k < this.fingers.size(); k++)
-            this.fingerToPeerMap.put(this.fingers.get(k), PeerInfo.NULL_PEER);
+    private FingerTable(FingerTable table, PeerInfo[] peers)
+    {
+        this.ownID = table.ownID;
+        this.fingers = table.fingers;
+        this.peers = peers;
     }
 
     public int size()
     {
-        return fingers.size();
+        return fingers.length;
     }
 
     public ID getFinger(int k)
     {
-        return fingers.get(k);
+        return fingers[k];
     }
 
     public PeerInfo getPeerInfo(int k)
     {
-        synchronized (fingerToPeerMap)
+        return peers[k];
+    }
+
+    /**
+     * Returns the peer of the highest finger that lies strictly between this peer and {@code id}, that is the
+     * known peer closest to {@code id} without passing it
+     * @param id ID being routed to
+     * @return the closest preceding peer, or {@link PeerInfo#NULL_PEER} if no finger precedes {@code id}
+     */
+    public PeerInfo getClosestPrecedingPeer(ID id)
+    {
+        for (int k = peers.length - 1; k >= 0; k--)
+        {
+            PeerInfo succOfFinger = peers[k];
+            if (succOfFinger != PeerInfo.NULL_PEER && succOfFinger.getID().inInterval(ownID, id))
+                return succOfFinger;
+        }
+        return PeerInfo.NULL_PEER;
+    }
+
+    /**
+     * Returns up to {@code max} distinct peers from the fingers that lie strictly between this peer and {@code id},
+     * closest to {@code id} first
+     * @param id ID being routed to
+     * @param max maximum number of peers to return
+     * @return the closest preceding peers, empty if no finger precedes {@code id}
+     */
+    public List<PeerInfo> getClosestPrecedingPeers(ID id, int max)
+    {
+        List<PeerInfo> closest = new ArrayList<>(max);
+        Set<ID> added = new HashSet<>();
+        for (int k = peers.length - 1; k >= 0 && closest.size() < max; k--)
         {
-            return fingerToPeerMap.get(fingers.get(k));
+            PeerInfo succOfFinger = peers[k];
+            // Consecutive fingers often point at the same peer
+            if (succOfFinger != PeerInfo.NULL_PEER && succOfFinger.getID().inInterval(ownID, id)
+                    && added.add(succOfFinger.getID()))
+                closest.add(succOfFinger);
         }
+        return closest;
     }
 
-    public void setPeerInfo(int k, PeerInfo peerInfo)
+    /**
+     * Returns a table with finger {@code k} pointing at {@code peerInfo}
+     */
+    public FingerTable withPeerInfo(int k, PeerInfo peerInfo)
     {
-        synchronized (fingerToPeerMap)
+        PeerInfo[] updated = peers.clone();
+        updated[k] = peerInfo;
+        if (peerInfo != PeerInfo.NULL_PEER)
         {
-            if (fingerToPeerMap.replace(getFinger(k), peerInfo) != null && peerInfo != PeerInfo.NULL_PEER)
+            // An optimization to speed up stabilization
+            ID id = peerInfo.getID();
+            for(int i = k+1; i < updated.length; i++)
             {
-                // An optimization to speed up stabilization
-                ID id = peerInfo.getID();
-                for(int i = k+1; i < size(); i++)
-                {
-                    ID curFinger = getFinger(i);
-                    if(curFinger.inInterval(ownID, id) || curFinger.compareTo(id) == 0)
-                        fingerToPeerMap.replace(curFinger, peerInfo);
-                }
+                ID curFinger = fingers[i];
+                if(curFinger.inInterval(ownID, id) || curFinger.compareTo(id) == 0)
+                    updated[i] = peerInfo;
             }
         }
+        return new FingerTable(this, updated);
     }
 
-    public void setPeerInfo(ID finger, PeerInfo peerInfo)
+    /**
+     * Returns a table with the finger starting at {@code finger} pointing at {@code peerInfo}, or this table if
+     * {@code finger} does not start any finger
+     */
+    public FingerTable withPeerInfo(ID finger, PeerInfo peerInfo)
     {
-        int idx = fingers.indexOf(finger);
-        if (idx >= 0)
-            setPeerInfo(idx, peerInfo);
+        int idx = indexOf(finger);
+        return idx >= 0 ? withPeerInfo(idx, peerInfo) : this;
     }
 
-    public void setSuccessor(PeerInfo successor) {
-        synchronized (fingerToPeerMap)
+    /**
+     * Returns the finger number {@code finger} is the start of, or -1 if it does not start any finger
+     */
+    private int indexOf(ID finger)
+    {
+        if (finger == null || finger.size() != ownID.size())
+            return -1;
+        // Finger k is 2^k away, so the highest bit of the distance names the only candidate
+        int k = finger.log2DistanceFrom(ownID);
+        return k >= 0 && fingers[k].equals(finger) ? k : -1;
+    }
+
+    /**
+     * Returns a table with every finger pointing at the peer with ID {@code id} cleared, or this table if none does
+     */
+    public FingerTable withoutPeer(ID id)
+    {
+        PeerInfo[] updated = null;
+        for (int k = 0; k < peers.length; k++)
         {
-            setPeerInfo(0, successor);
+            if (peers[k] != PeerInfo.NULL_PEER && peers[k].getID().compareTo(id) == 0)
+            {
+                if (updated == null)
+                    updated = peers.clone();
+                updated[k] = PeerInfo.NULL_PEER;
+            }
         }
+        return updated == null ? this : new FingerTable(this, updated);
+    }
+
+    public FingerTable withSuccessor(PeerInfo successor) {
+        return withPeerInfo(0, successor);
     }
 
     public PeerInfo getSuccessor()
@@ -104,12 +184,9 @@ final class FingerTable
         StringBuilder stringBuilder = new StringBuilder();
         stringBuilder.append(String.format("%n"));
         final String formatString = "%1$3d (%2$" + (ownID.sizeInBits()/4 + 1) + "s): %3$s (%4$s)%n";
-        synchronized (fingerToPeerMap)
+        for(int k=0; k<size(); k++)
         {
-            for(int k=0; k<size(); k++)
-            {
-                stringBuilder.append(String.format(formatString, k, getFinger(k), getPeerInfo(k).getName(), getPeerInfo(k).getID()));
-            }
+            stringBuilder.append(String.format(formatString, k, getFinger(k), getPeerInfo(k).getName(), getPeerInfo(k).getID()));
         }
         return stringBuilder.toString();
     }
@@ -3,31 +3,36 @@ package a2.chord.peer;
 import java.io.*;
 import java.math.BigInteger;
 
+/**
+ * An identifier on a Chord ring of {@code 2^(8*size)} positions. Identifiers of up to 8 bytes, which includes the
+ * 16 bit CRC16 ring, are held in an unsigned {@code long} so that routing compares and adds them without
+ * allocating. Wider identifiers, such as those of a SHA-1 ring, are held in a {@link BigInteger}.
+ */
 public class ID implements Externalizable, Comparable<ID>
 {
-    private BigInteger id;
+    // Widest identifier, in bytes, that is held in a long
+    private static final int MAX_LONG_SIZE = Long.BYTES;
+
     private int size;
+    // Identifier of a ring up to MAX_LONG_SIZE bytes wide, as an unsigned value
+    private long value;
+    // Mask reducing a long modulo the ring size
+    private long mask;
+    // Identifier of a wider ring, null otherwise
+    private BigInteger id;
     private BigInteger MOD_VAL;
 
     public ID()
     {
-        this.id = null;
         this.size = 0;
-        this.MOD_VAL = calculateModVal();
-    }
-
-    private BigInteger calculateModVal()
-    {
-        return BigInteger.valueOf(2).pow(this.size * Byte.SIZE);
+        this.id = null;
+        this.MOD_VAL = null;
     }
 
     public ID(String hex, int size)
     {
         try {
-            this.size = size;
-            this.MOD_VAL = calculateModVal();
-
-            this.id = new BigInteger(hex, 16).mod(this.MOD_VAL);
+            init(new BigInteger(hex, 16), size);
         }
         catch(NumberFormatException ex)
         {
@@ -36,58 +41,159 @@ public class ID implements Externalizable, Comparable<ID>
     }
 
     public ID(BigInteger id, int size)
+    {
+        init(id, size);
+    }
+
+    private ID(long value, int size)
     {
         this.size = size;
-        this.MOD_VAL = calculateModVal();
-        this.id = id.mod(this.MOD_VAL);
+        this.mask = calculateMask(size);
+        this.value = value & mask;
     }
 
+    private void init(BigInteger id, int size)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("ID size must be at least 1 byte, not " + size);
+        this.size = size;
+        if (isLong())
+        {
+            this.mask = calculateMask(size);
+            // The low 64 bits of the two's complement are the value modulo 2^64, negative or not
+            this.value = id.longValue() & mask;
+        }
+        else
+        {
+            this.MOD_VAL = calculateModVal(size);
+            this.id = id.mod(this.MOD_VAL);
+        }
+    }
+
+    private static long calculateMask(int size)
+    {
+        return size == MAX_LONG_SIZE ? -1L : (1L << (size * Byte.SIZE)) - 1;
+    }
+
+    private static BigInteger calculateModVal(int size)
+    {
+        return BigInteger.valueOf(2).pow(size * Byte.SIZE);
+    }
+
+    private boolean isLong()
+    {
+        return size <= MAX_LONG_SIZE;
+    }
+
+    private void checkInitialized(String method)
+    {
+        if (this.size == 0)
+            throw new IllegalStateException(method + " called on an uninitialized ID");
+    }
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException
     {
         out.writeInt(this.size);
-        byte[] idAsBytes = this.id.toByteArray();
-        out.writeInt(idAsBytes.length);
-        out.write(idAsBytes);
+        if (isLong())
+            out.writeLong(this.value);
+        else
+        {
+            byte[] idAsBytes = this.id.toByteArray();
+            out.writeInt(idAsBytes.length);
+            out.write(idAsBytes);
+        }
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
     {
         this.size = in.readInt();
-        byte[] idAsBytes = new byte[in.readInt()];
-        in.read(idAsBytes);
-        this.MOD_VAL = calculateModVal();
-        // No need to calculate .mod() since constructors guarantee a modular value
-        this.id = new BigInteger(idAsBytes);
+        // No need to reduce the value since constructors guarantee a modular value
+        if (isLong())
+        {
+            this.mask = calculateMask(this.size);
+            this.value = in.readLong();
+        }
+        else
+        {
+            byte[] idAsBytes = new byte[in.readInt()];
+            in.readFully(idAsBytes);
+            this.MOD_VAL = calculateModVal(this.size);
+            this.id = new BigInteger(idAsBytes);
+        }
     }
 
     public BigInteger get()
     {
-        if (this.id == null)
-            throw new IllegalStateException("get() called on an uninitialized ID");
+        checkInitialized("get()");
+        if (isLong())
+        {
+            BigInteger big = BigInteger.valueOf(value);
+            return value >= 0 ? big : big.add(BigInteger.ONE.shiftLeft(Long.SIZE));
+        }
         // BigInteger is immutable, so this is safe
         return id;
     }
 
     public ID addModulo(BigInteger num)
     {
-        if (this.id == null)
-            throw new IllegalStateException("add() called on an uninitialized ID");
+        checkInitialized("add()");
+        if (isLong())
+            // Only the low bits of num matter modulo the ring size
+            return new ID(this.value + num.longValue(), this.size);
 
         return new ID(this.id.add(num).mod(MOD_VAL), this.size);
     }
 
+    /**
+     * Returns the position of the highest bit set in the clockwise distance from {@code from} to this ID, which is
+     * {@code k} for the start of finger {@code k} of {@code from}
+     * @param from ID the distance is measured from
+     * @return floor of log2 of the distance, or -1 if the IDs are equal
+     * @throws IllegalArgumentException if the IDs have different sizes
+     */
+    public int log2DistanceFrom(ID from)
+    {
+        checkInitialized("log2DistanceFrom()");
+        if (this.size != from.size())
+            throw new IllegalArgumentException("log2DistanceFrom() called on different size IDs: " + size() + " and " + from.size());
+
+        if (isLong())
+        {
+            long distance = (this.value - from.value) & mask;
+            return Long.SIZE - 1 - Long.numberOfLeadingZeros(distance);
+        }
+        return this.id.subtract(from.id).mod(MOD_VAL).bitLength() - 1;
+    }
+
+    /**
+     * Returns the clockwise distance from this ID to {@code to}, as an ID of the same size
+     * @param to ID the distance is measured to
+     * @return {@code to - this} modulo the ring size
+     * @throws IllegalArgumentException if the IDs have different sizes
+     */
+    public ID distanceTo(ID to)
+    {
+        checkInitialized("distanceTo()");
+        if (this.size != to.size())
+            throw new IllegalArgumentException("distanceTo() called on different size IDs: " + size() + " and " + to.size());
+
+        if (isLong())
+            return new ID(to.value - this.value, this.size);
+        return new ID(to.id.subtract(this.id).mod(MOD_VAL), this.size);
+    }
+
     @Override
     public int compareTo(ID id)
     {
-        if (this.id == null)
-            throw new IllegalStateException("compareTo() called on an uninitialized ID");
+        checkInitialized("compareTo()");
         if (this.size != id.size())
             throw new IllegalArgumentException("compareTo() called on different size IDs: " + size() + " and " + id.size());
 
-        return this.id.compareTo(id.get());
+        if (isLong())
+            return Long.compareUnsigned(this.value, id.value);
+        return this.id.compareTo(id.id);
     }
 
     public boolean inInterval(ID end1, ID end2, boolean inclusive)
@@ -100,17 +206,42 @@ public class ID implements Externalizable, Comparable<ID>
         else if (end1.size() != this.size())
             throw new IllegalArgumentException("Size of ID does not match that of the endpoints");
 
-        if(end1.compareTo(end2) < 0)
+        checkInitialized("inInterval()");
+        if (isLong())
+            return inInterval(this.value, end1.value, end2.value, inclusive);
+        return inInterval(this.id, end1.id, end2.id, inclusive);
+    }
+
+    private static boolean inInterval(long id, long end1, long end2, boolean inclusive)
+    {
+        int ends = Long.compareUnsigned(end1, end2);
+        if (ends < 0)
+            return inclusive ?
+                   Long.compareUnsigned(end1, id) <= 0 && Long.compareUnsigned(id, end2) <= 0 :
+                   Long.compareUnsigned(end1, id) < 0 && Long.compareUnsigned(id, end2) < 0;
+
+        else if (ends > 0)
+            return inclusive ?
+                   Long.compareUnsigned(id, end1) >= 0 || Long.compareUnsigned(id, end2) <= 0 :
+                   Long.compareUnsigned(id, end1) > 0 || Long.compareUnsigned(id, end2) < 0;
+        else
+            return inclusive ? true : id != end1;
+    }
+
+    private static boolean inInterval(BigInteger id, BigInteger end1, BigInteger end2, boolean inclusive)
+    {
+        int ends = end1.compareTo(end2);
+        if (ends < 0)
             return inclusive ?
-                   end1.compareTo(this) <= 0 && this.compareTo(end2) <= 0 :
-                   end1.compareTo(this) < 0 && this.compareTo(end2) < 0;
+                   end1.compareTo(id) <= 0 && id.compareTo(end2) <= 0 :
+                   end1.compareTo(id) < 0 && id.compareTo(end2) < 0;
 
-        else if (end1.compareTo(end2) > 0)
+        else if (ends > 0)
             return inclusive ?
-                   this.compareTo(end1) >= 0 || this.compareTo(end2) <= 0 :
-                   this.compareTo(end1) > 0 || this.compareTo(end2) < 0;
+                   id.compareTo(end1) >= 0 || id.compareTo(end2) <= 0 :
+                   id.compareTo(end1) > 0 || id.compareTo(end2) < 0;
         else
-            return inclusive ? true : this.compareTo(end1) != 0;
+            return inclusive ? true : id.compareTo(end1) != 0;
     }
 
     public boolean inInterval(ID end1, ID end2)
@@ -131,9 +262,8 @@ public class ID implements Externalizable, Comparable<ID>
     @Override
     public String toString()
     {
-        if (this.id == null)
-            throw new IllegalStateException("toString() called on an uninitialized ID");
-        return this.id.toString(16);
+        checkInitialized("toString()");
+        return isLong() ? Long.toHexString(this.value) : this.id.toString(16);
     }
 
     @Override
@@ -145,13 +275,14 @@ public class ID implements Externalizable, Comparable<ID>
         ID id1 = (ID) o;
 
         if (size != id1.size) return false;
+        if (isLong()) return value == id1.value;
         return id != null ? id.equals(id1.id) : id1.id == null;
     }
 
     @Override
     public int hashCode()
     {
-        int result = id != null ? id.hashCode() : 0;
+        int result = isLong() ? Long.hashCode(value) : id.hashCode();
         result = 31 * result + size;
         return result;
     }
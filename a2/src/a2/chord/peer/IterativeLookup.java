@@ -0,0 +1,158 @@
+package a2.chord.peer;
+
+import a2.chord.peer.messages.LookupCause;
+import a2.chord.peer.messages.NextHopResult;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The progress of one lookup driven by its source in {@link LookupMode#ITERATIVE} mode. It keeps the peers
+ * learnt so far ordered by their distance to the ID, and hands out the closest ones not yet asked, so that up to
+ * {@code parallelism} requests are in flight at a time. Every answer, failure or timeout of a request frees its
+ * slot for the next closest peer. The lookup completes on the first answer naming the successor of the ID.
+ *
+ * Answers arrive on the event thread and timeouts on the heartbeat thread, so all methods are synchronized.
+ * Peers to send requests to are returned rather than sent to, so that no message is sent while holding the lock.
+ */
+final class IterativeLookup
+{
+    private final int number;
+    private final ID id;
+    private final LookupCause cause;
+    private final int parallelism;
+
+    // Peers not asked yet, keyed by their distance to the ID, so the closest comes first
+    private final TreeMap<ID, PeerInfo> candidates = new TreeMap<>();
+    // Peers asked or being asked, never asked again
+    private final Set<ID> asked = new HashSet<>();
+    // Requests without an answer yet, by the address they were sent to
+    private final Map<InetSocketAddress, PeerInfo> inFlight = new HashMap<>();
+    private PeerInfo successor = PeerInfo.NULL_PEER;
+    private List<PeerInfo> startPeers = new ArrayList<>();
+
+    IterativeLookup(int number, ID id, LookupCause cause, int parallelism)
+    {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism of a lookup must be >= 1");
+        this.number = number;
+        this.id = id;
+        this.cause = cause;
+        this.parallelism = parallelism;
+    }
+
+    int getNumber()
+    {
+        return number;
+    }
+
+    ID getID()
+    {
+        return id;
+    }
+
+    LookupCause getCause()
+    {
+        return cause;
+    }
+
+    /**
+     * Adds the peers to start from
+     * @return peers to send requests to now
+     */
+    synchronized List<PeerInfo> start(Collection<PeerInfo> peers)
+    {
+        startPeers = new ArrayList<>(peers);
+        addCandidates(peers);
+        return nextProbes();
+    }
+
+    /**
+     * Records the answer of a peer
+     * @return peers to send requests to now
+     */
+    synchronized List<PeerInfo> onResult(NextHopResult result)
+    {
+        if (isComplete())
+            return new ArrayList<>();
+        // An answer arriving after its request timed out is still used
+        inFlight.remove(result.getResponder().getListeningAddress());
+
+        if (result.isComplete())
+        {
+            successor = result.getSuccessor();
+            inFlight.clear();
+            candidates.clear();
+            return new ArrayList<>();
+        }
+        addCandidates(result.getNextHops());
+        return nextProbes();
+    }
+
+    /**
+     * Records that the request sent to {@code address} failed or timed out. Does nothing if that request has
+     * already been answered.
+     * @return peers to send requests to now
+     */
+    synchronized List<PeerInfo> onFailure(InetSocketAddress address)
+    {
+        if (isComplete() || inFlight.remove(address) == null)
+            return new ArrayList<>();
+        return nextProbes();
+    }
+
+    synchronized boolean isComplete()
+    {
+        return successor != PeerInfo.NULL_PEER;
+    }
+
+    /**
+     * Returns {@code true} if the lookup has not completed and has no peer left to ask
+     */
+    synchronized boolean isExhausted()
+    {
+        return !isComplete() && inFlight.isEmpty() && candidates.isEmpty();
+    }
+
+    /**
+     * Returns the peers the lookup was started from, to start it again
+     */
+    synchronized List<PeerInfo> getStartPeers()
+    {
+        return new ArrayList<>(startPeers);
+    }
+
+    synchronized PeerInfo getSuccessor()
+    {
+        return successor;
+    }
+
+    private void addCandidates(Collection<PeerInfo> peers)
+    {
+        for (PeerInfo p : peers)
+            if (p != PeerInfo.NULL_PEER && !asked.contains(p.getID()))
+                candidates.put(p.getID().distanceTo(id), p);
+    }
+
+    private List<PeerInfo> nextProbes()
+    {
+        List<PeerInfo> probes = new ArrayList<>();
+        while (inFlight.size() < parallelism && !candidates.isEmpty())
+        {
+            PeerInfo p = candidates.pollFirstEntry().getValue();
+            if (asked.add(p.getID()))
+            {
+                inFlight.put(p.getListeningAddress(), p);
+                probes.add(p);
+            }
+        }
+        return probes;
+    }
+}
@@ -0,0 +1,18 @@
+package a2.chord.peer;
+
+/**
+ * How a {@link Peer} resolves the lookups it starts
+ */
+public enum LookupMode
+{
+    /**
+     * Each peer on the way forwards the request to the next, and the last one answers the source directly.
+     * Takes one message per hop, but a hop that dies loses the lookup.
+     */
+    RECURSIVE,
+    /**
+     * The source asks each hop for the next ones itself, keeping several requests in flight and moving on from a
+     * hop that does not answer in time. Takes a round trip per hop, but survives hops that die.
+     */
+    ITERATIVE
+}
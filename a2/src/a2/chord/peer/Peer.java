@@ -2,6 +2,7 @@ package a2.chord.peer;
 
 import a2.chord.peer.messages.*;
 import a2.chord.peer.messages.DataItem;
+import a2.transport.FileTransfer;
 import a2.transport.Message;
 import a2.transport.messenger.*;
 
@@ -10,9 +11,16 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -21,23 +29,62 @@ public abstract class Peer implements Runnable
 {
     private static final Logger LOGGER = Logger.getLogger(Peer.class.getName());
 
-    private final ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * Number of requests an iterative lookup keeps in flight
+     */
+    public static final int LOOKUP_PARALLELISM = 3;
+    /**
+     * Time an iterative lookup waits for a hop to answer before asking the next closest peer instead
+     */
+    public static final long HOP_TIMEOUT_MILLIS = 500;
+    /**
+     * Number of successors a peer keeps, its successor included, to fail over to when the successor dies
+     */
+    public static final int SUCCESSOR_LIST_LENGTH = 4;
+    /**
+     * Number of heartbeats without a PRED_UPDATE from the predecessor after which it is considered dead
+     */
+    public static final int PREDECESSOR_TIMEOUT_HEARTBEATS = 3;
+    /**
+     * Number of data items streamed over one connection when handing keys over to a new predecessor. Each batch is
+     * acknowledged by the new predecessor before its items are deleted here.
+     */
+    public static final int MIGRATION_BATCH_SIZE = 256;
 
-    private PeerInfo ownInfo;
-    private PeerInfo predecessor;
-    private FingerTable fingerTable;
+    private final ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor();
+    // Hands data items over to new predecessors, so that the event thread never waits for a transfer
+    private final ExecutorService migrator = Executors.newSingleThreadExecutor();
+    // Number of the latest handoff; a migration for an earlier predecessor stops before its next batch
+    private final AtomicLong migrations = new AtomicLong();
+    // Data items without contents sent to a new predecessor and not yet reported sent, so no later handoff resends them
+    private final Set<DataItem> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private volatile PeerInfo ownInfo;
+    // Fingers, predecessor and whether joined; replaced as a whole so that lookups never wait for stabilization
+    private final AtomicReference<RoutingState> state;
     private Messenger messenger;
-    private Boolean joined;
-    private HashMap<ID, DataItem> storedFiles;
+    // Ordered by ID, so that handing over a range of keys only visits the items in it
+    private final ConcurrentNavigableMap<ID, DataItem> storedFiles = new ConcurrentSkipListMap<>();
+    private final LookupMode lookupMode;
+    // Lookups this peer is driving in ITERATIVE mode, by number
+    private final Map<Integer, IterativeLookup> lookups = new ConcurrentHashMap<>();
+    private final AtomicInteger lookupNumbers = new AtomicInteger();
+    private final int hearbeatInterval;
+    // When the predecessor last sent a PRED_UPDATE
+    private volatile long predecessorHeardMillis;
 
     public Peer(PeerInfo info, int hearbeatInterval)
+    {
+        this(info, hearbeatInterval, LookupMode.RECURSIVE);
+    }
+
+    public Peer(PeerInfo info, int hearbeatInterval, LookupMode lookupMode)
     {
         this.ownInfo = info;
-        this.fingerTable = new FingerTable(info.getID());
-        this.predecessor = PeerInfo.NULL_PEER;
+        this.lookupMode = lookupMode;
+        this.state = new AtomicReference<>(new RoutingState(info.getID(), SUCCESSOR_LIST_LENGTH));
+        this.hearbeatInterval = hearbeatInterval;
         this.messenger = new Messenger(info.getListeningAddress().getPort(), 4);
-        this.joined = false;
-        this.storedFiles = new HashMap<>();
         this.updater.scheduleWithFixedDelay(this::hearbeat, 0, hearbeatInterval, TimeUnit.MILLISECONDS);
     }
 
@@ -46,138 +93,249 @@ public abstract class Peer implements Runnable
      */
     private void hearbeat()
     {
-        synchronized (joined)
+        RoutingState current = state.get();
+        if (current.isJoined())
         {
-            if (joined)
-            {
-                synchronized (fingerTable)
-                {
-                    PeerInfo succ = fingerTable.getSuccessor();
-                    if (succ != PeerInfo.NULL_PEER) {
-                        // if you are your own successor
-                        if (succ.getID().compareTo(ownInfo.getID()) ==  0) {
-                            {
-                                PeerInfo pred = getPredecessor();
-                                if (pred != PeerInfo.NULL_PEER && pred.getID().compareTo(ownInfo.getID()) != 0)
-                                    fingerTable.setSuccessor(pred);
-                            }
-                        } else {
-                            send(new PredecessorRequest(ownInfo), succ.getListeningAddress());
-                            send(new PredecessorUpdate(ownInfo), succ.getListeningAddress());
-                        }
-                    }
-
-                    // Fix fingers randomly
-                    int idx = ThreadLocalRandom.current().nextInt(1, fingerTable.size());
-                    lookup(fingerTable.getFinger(idx), LookupCause.FINGER_UPDATE);
+            checkPredecessor(current.getPredecessor());
+
+            PeerInfo succ = current.getSuccessor();
+            if (succ != PeerInfo.NULL_PEER) {
+                // if you are your own successor
+                if (succ.getID().compareTo(ownInfo.getID()) ==  0) {
+                    RoutingState.update(state, s -> {
+                        PeerInfo pred = s.getPredecessor();
+                        boolean ownSuccessor = s.getSuccessor().getID().compareTo(ownInfo.getID()) == 0;
+                        if (ownSuccessor && pred != PeerInfo.NULL_PEER && pred.getID().compareTo(ownInfo.getID()) != 0)
+                            return s.withSuccessor(pred);
+                        return s;
+                    });
+                } else {
+                    send(new PredecessorRequest(ownInfo), succ.getListeningAddress());
+                    send(new PredecessorUpdate(ownInfo), succ.getListeningAddress());
                 }
             }
+
+            // Fix fingers randomly
+            FingerTable fingerTable = current.getFingerTable();
+            int idx = ThreadLocalRandom.current().nextInt(1, fingerTable.size());
+            lookup(fingerTable.getFinger(idx), LookupCause.FINGER_UPDATE);
         }
     }
 
+    /**
+     * Forgets the predecessor if it has not sent a PRED_UPDATE for a few heartbeats, so that the peer before a
+     * crashed predecessor is accepted in its place
+     */
+    private void checkPredecessor(PeerInfo pred)
+    {
+        if (pred == PeerInfo.NULL_PEER || pred.getID().compareTo(ownInfo.getID()) == 0)
+            return;
+        if (System.currentTimeMillis() - predecessorHeardMillis > PREDECESSOR_TIMEOUT_HEARTBEATS * (long) hearbeatInterval)
+        {
+            if (RoutingState.update(state, s -> s.getPredecessor() == pred ? s.withPredecessor(PeerInfo.NULL_PEER) : s))
+                LOGGER.log(Level.WARNING, "Predecessor " + pred + " stopped sending updates. Forgetting it.");
+        }
+    }
+
+    /**
+     * Stops routing to the peer listening at {@code address} after a message to it failed. If it was the successor,
+     * the next live one from the successor list takes over right away, instead of the ring staying broken until
+     * fix fingers happens to find it.
+     */
+    private void handleUnreachablePeer(InetSocketAddress address)
+    {
+        RoutingState current = state.get();
+        PeerInfo failed = findPeer(current, address);
+        if (failed == PeerInfo.NULL_PEER || failed.getID().compareTo(ownInfo.getID()) == 0)
+            return;
+
+        PeerInfo self = ownInfo;
+        if (!RoutingState.update(state, s -> s.withoutPeer(failed.getID(), self)))
+            return;
+
+        PeerInfo succ = state.get().getSuccessor();
+        LOGGER.log(Level.WARNING, "Peer " + failed + " is unreachable. Successor is now " + succ);
+        if (current.getSuccessor() == failed && succ.getID().compareTo(ownInfo.getID()) != 0)
+        {
+            // Tell the new successor about this peer now rather than on the next heartbeat
+            send(new PredecessorUpdate(ownInfo), succ.getListeningAddress());
+            send(new PredecessorRequest(ownInfo), succ.getListeningAddress());
+        }
+        printState();
+    }
+
+    private static PeerInfo findPeer(RoutingState current, InetSocketAddress address)
+    {
+        for (PeerInfo p : current.getSuccessors())
+            if (address.equals(p.getListeningAddress()))
+                return p;
+        FingerTable fingerTable = current.getFingerTable();
+        for (int k = 0; k < fingerTable.size(); k++)
+        {
+            PeerInfo p = fingerTable.getPeerInfo(k);
+            if (p != PeerInfo.NULL_PEER && address.equals(p.getListeningAddress()))
+                return p;
+        }
+        return PeerInfo.NULL_PEER;
+    }
+
     private void printState()
     {
-        LOGGER.log(Level.INFO, String.format("Predecessor: %1$s%n", getPredecessor().toString()) + fingerTable.toString());
+        LOGGER.log(Level.INFO, state.get().toString());
         printHeldDataItems();
     }
 
     private void printHeldDataItems()
     {
-        synchronized(storedFiles) {
-            if (storedFiles.size() > 0) {
-                StringBuilder stringBuilder = new StringBuilder();
-                stringBuilder.append(String.format("%n"));
+        if (!storedFiles.isEmpty()) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(String.format("%n"));
 
-                for (DataItem d : storedFiles.values()) {
-                    stringBuilder.append(String.format("%1$s%n", d));
-                }
-                LOGGER.log(Level.INFO, "Currently held data items: " + stringBuilder.toString());
+            for (DataItem d : storedFiles.values()) {
+                stringBuilder.append(String.format("%1$s%n", d));
             }
+            LOGGER.log(Level.INFO, "Currently held data items: " + stringBuilder.toString());
         }
     }
 
     private void lookup(LookupRequest msg)
     {
-        synchronized(fingerTable) {
-            PeerInfo pred = getClosestNodePrecedingId(msg.getID());
-            LOGGER.log(Level.INFO, "Closest node is " + pred);
-            // Query dies if not enough info is there
-            if (pred == PeerInfo.NULL_PEER)
-                return;
-
-            if (pred.getID().compareTo(ownInfo.getID()) == 0)
-                send(new LookupResult(fingerTable.getSuccessor(), msg), msg.getSource().getListeningAddress());
-            else
-                send(msg, pred.getListeningAddress());
-        }
+        RoutingState current = state.get();
+        PeerInfo pred = getClosestNodePrecedingId(current, msg.getID());
+        LOGGER.log(Level.INFO, "Closest node is " + pred);
+        // Query dies if not enough info is there
+        if (pred == PeerInfo.NULL_PEER)
+            return;
+
+        if (pred.getID().compareTo(ownInfo.getID()) == 0)
+            send(new LookupResult(current.getSuccessor(), msg), msg.getSource().getListeningAddress());
+        else
+            send(msg, pred.getListeningAddress());
     }
 
     // Returning NULL_PEER means any query that depends on its outcome will die
-    private PeerInfo getClosestNodePrecedingId(ID id)
+    private PeerInfo getClosestNodePrecedingId(RoutingState current, ID id)
     {
         if (id == null)
             return PeerInfo.NULL_PEER;
 
-        synchronized(fingerTable)
+        // Start at the bottom of the finger table
+        // Continue up until we get to a finger whose successor is in interval (ownID, id)
+        // Basically this means it is trying to find a node that is closer to 'id' than it is
+        // Starting from the bottom means it is trying to find the closest one among such nodes
+        PeerInfo succ = current.getClosestPrecedingPeer(id);
+        if (succ != PeerInfo.NULL_PEER)
+            return succ;
+
+        // Could be that we went through the entire finger table without finding any suitable entry
+        // Maybe because all of them are NULL_PEER, or because none of the entry matched
+        if (current.getSuccessor() != PeerInfo.NULL_PEER)
+            succ = ownInfo;
+
+        return succ;
+    }
+
+    /**
+     * Starts a lookup driven by this peer, asking {@code startPeers}, or the closest preceding fingers if
+     * {@code null}, for the next hops
+     */
+    private void startIterativeLookup(ID id, LookupCause cause, List<PeerInfo> startPeers)
+    {
+        if (startPeers == null)
         {
-            // Start at the bottom of the finger table
-            // Continue up until we get to a finger whose successor is in interval (ownID, id)
-            // Basically this means it is trying to find a node that is closer to 'id' than it is
-            // Starting from the bottom means it is trying to find the closest one among such nodes
-            PeerInfo succ = PeerInfo.NULL_PEER;
-            for(int k = fingerTable.size() - 1; k >= 0; k--)
+            RoutingState current = state.get();
+            PeerInfo pred = getClosestNodePrecedingId(current, id);
+            // Query dies if not enough info is there
+            if (pred == PeerInfo.NULL_PEER)
+                return;
+
+            if (pred.getID().compareTo(ownInfo.getID()) == 0)
             {
-                PeerInfo succOfFinger = fingerTable.getPeerInfo(k);
-                if (succOfFinger != PeerInfo.NULL_PEER && succOfFinger.getID().inInterval(ownInfo.getID(), id))
-                {
-                    return succOfFinger;
-                }
+                send(new LookupResult(current.getSuccessor(), new LookupRequest(id, ownInfo, cause)), ownInfo.getListeningAddress());
+                return;
             }
+            startPeers = current.getClosestPrecedingPeers(id, LOOKUP_PARALLELISM);
+        }
 
-            // Could be that we went through the entire finger table without finding any suitable entry
-            // Maybe because all of them are NULL_PEER, or because none of the entry matched
-            if (fingerTable.getSuccessor() != PeerInfo.NULL_PEER)
-                succ = ownInfo;
+        IterativeLookup lookup = new IterativeLookup(lookupNumbers.incrementAndGet(), id, cause, LOOKUP_PARALLELISM);
+        lookups.put(lookup.getNumber(), lookup);
+        probe(lookup, lookup.start(startPeers));
+    }
 
-            return succ;
+    private void probe(IterativeLookup lookup, List<PeerInfo> peers)
+    {
+        for (PeerInfo p : peers)
+        {
+            InetSocketAddress address = p.getListeningAddress();
+            send(new NextHopRequest(lookup.getID(), ownInfo, lookup.getNumber()), address);
+            // Move on to the next closest peer if this one is too slow; does nothing once it has answered
+            updater.schedule(() -> probe(lookup, lookup.onFailure(address)), HOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        if (lookup.isExhausted() && lookups.remove(lookup.getNumber(), lookup))
+        {
+            LOGGER.log(Level.WARNING, "Iterative lookup of " + lookup.getID() + " with cause " + lookup.getCause() + " ran out of peers to ask");
+            // Fingers are fixed again on a later heartbeat anyway, but joining has nobody else to ask
+            if (lookup.getCause() == LookupCause.NEW_NODE)
+                updater.schedule(() -> startIterativeLookup(lookup.getID(), lookup.getCause(), lookup.getStartPeers()),
+                        HOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
         }
     }
 
-    private PeerInfo getPredecessor()
+    private void handleNextHopRequestMsg(NextHopRequest msg)
     {
-        synchronized (predecessor)
+        RoutingState current = state.get();
+        PeerInfo succ = current.getSuccessor();
+        // Query dies if not enough info is there; the source times out and asks another peer
+        if (succ == PeerInfo.NULL_PEER)
+            return;
+
+        // Unlike a recursive hop, this peer may not be the closest one the source knows of, so it only claims the
+        // lookup is complete when the ID really falls between it and its successor
+        ID id = msg.getID();
+        if (id.inInterval(ownInfo.getID(), succ.getID()) || id.compareTo(succ.getID()) == 0)
         {
-            return predecessor;
+            send(NextHopResult.complete(msg, ownInfo, succ), msg.getSource().getListeningAddress());
+            return;
         }
+
+        List<PeerInfo> nextHops = current.getClosestPrecedingPeers(id, LOOKUP_PARALLELISM);
+        // No known peer precedes the ID, but the successor is still closer to it than this peer
+        if (nextHops.isEmpty())
+            nextHops = Collections.singletonList(succ);
+        send(NextHopResult.nextHops(msg, ownInfo, nextHops), msg.getSource().getListeningAddress());
     }
 
-    private void setPredecessor(PeerInfo newPredecessor)
+    private void handleNextHopResultMsg(NextHopResult msg)
     {
-        synchronized (predecessor)
+        IterativeLookup lookup = lookups.get(msg.getLookupNumber());
+        // Late answer to a lookup that has already completed or given up
+        if (lookup == null || !lookup.getID().equals(msg.getLookedUpID()))
+            return;
+
+        List<PeerInfo> next = lookup.onResult(msg);
+        if (lookup.isComplete())
         {
-            predecessor = newPredecessor;
+            if (lookups.remove(lookup.getNumber(), lookup))
+                handleLookupResultMsg(new LookupResult(lookup.getSuccessor(), new LookupRequest(lookup.getID(), ownInfo, lookup.getCause())));
         }
+        else
+            probe(lookup, next);
     }
 
     private void handleLookupResultMsg(LookupResult msg)
     {
         if (msg.getCause() == LookupCause.NEW_NODE)
         {
-            synchronized (joined) {
-                synchronized (fingerTable)
-                {
-                    if (!joined) {
-                        fingerTable.setSuccessor(msg.getSuccessor());
-                        joined = true;
-                        LOGGER.log(Level.INFO, "Joined the Chord network");
-                        printState();
-                    }
-                }
+            if (RoutingState.update(state, s -> s.isJoined() ? s : s.withSuccessor(msg.getSuccessor()).asJoined()))
+            {
+                LOGGER.log(Level.INFO, "Joined the Chord network");
+                printState();
             }
         }
         else if (msg.getCause() == LookupCause.FINGER_UPDATE)
         {
-            fingerTable.setPeerInfo(msg.getLookedUpID(), msg.getSuccessor());
+            RoutingState.update(state, s -> s.withFinger(msg.getLookedUpID(), msg.getSuccessor()));
             printState();
         }
         else
@@ -195,93 +353,166 @@ public abstract class Peer implements Runnable
 
     private void handlePredRequestMsg(PredecessorRequest msg)
     {
-        synchronized(predecessor)
+        RoutingState current = state.get();
+        PeerInfo pred = current.getPredecessor();
+        if (pred != PeerInfo.NULL_PEER)
         {
-            if (predecessor != PeerInfo.NULL_PEER)
-                send(new PredecessorResult(getPredecessor()), msg.getSource().getListeningAddress());
+            List<PeerInfo> successors = new ArrayList<>(current.getSuccessors().size() + 1);
+            successors.add(ownInfo);
+            successors.addAll(current.getSuccessors());
+            send(new PredecessorResult(pred, successors), msg.getSource().getListeningAddress());
         }
     }
 
     private void handlePredResultMsg(PredecessorResult msg)
     {
-        synchronized (fingerTable)
-        {
-            // Get successor's predecessor
-            PeerInfo predecessorOfSuccessor = msg.getPredecessor();
-            PeerInfo succ = fingerTable.getSuccessor();
-            if (succ != PeerInfo.NULL_PEER && predecessorOfSuccessor.getID().inInterval(ownInfo.getID(), succ.getID()))
-            {
-                fingerTable.setSuccessor(predecessorOfSuccessor);
-                printState();
-            }
-        }
+        // Get successor's predecessor
+        PeerInfo predecessorOfSuccessor = msg.getPredecessor();
+        boolean updated = RoutingState.update(state, s -> {
+            PeerInfo succ = s.getSuccessor();
+            if (succ == PeerInfo.NULL_PEER)
+                return s;
+            if (predecessorOfSuccessor.getID().inInterval(ownInfo.getID(), succ.getID()))
+                s = s.withSuccessor(predecessorOfSuccessor);
+            // The successors reported start with the responder, so they follow a new successor as well
+            return s.withSuccessorsOfSuccessor(msg.getSuccessors());
+        });
+        if (updated)
+            printState();
     }
 
     private void handlePredUpdateMsg(PredecessorUpdate msg)
     {
         PeerInfo latestPredecessor = msg.getLatestPredecessor();
-        synchronized (predecessor)
+        PeerInfo known = state.get().getPredecessor();
+        if (known != PeerInfo.NULL_PEER && known.getID().compareTo(latestPredecessor.getID()) == 0)
         {
-            if (predecessor == PeerInfo.NULL_PEER || latestPredecessor.getID().inInterval(predecessor.getID(), ownInfo.getID()))
-            {
-                setPredecessor(latestPredecessor);
-                transferDataItemsToNewNode(latestPredecessor);
-            }
+            predecessorHeardMillis = System.currentTimeMillis();
+            return;
+        }
+        boolean updated = RoutingState.update(state, s -> {
+            PeerInfo pred = s.getPredecessor();
+            if (pred == PeerInfo.NULL_PEER || latestPredecessor.getID().inInterval(pred.getID(), ownInfo.getID()))
+                return s.withPredecessor(latestPredecessor);
+            return s;
+        });
+        if (updated)
+        {
+            predecessorHeardMillis = System.currentTimeMillis();
+            transferDataItemsToNewNode(latestPredecessor);
         }
     }
 
     private void transferDataItemsToNewNode(PeerInfo newNode)
     {
-        synchronized (storedFiles)
+        if (newNode == PeerInfo.NULL_PEER)
+            return;
+
+        // Supersedes any handoff still under way for an earlier predecessor
+        long migration = migrations.incrementAndGet();
+        migrator.execute(() -> migrate(newNode, migration));
+    }
+
+    /**
+     * Streams the items {@code newNode} is now responsible for to it in batches of {@link #MIGRATION_BATCH_SIZE},
+     * each over one connection, and deletes the items of a batch here once {@code newNode} has acknowledged it. Runs
+     * on the migrator thread, one handoff after the other. Stops before its next batch once a newer handoff has made
+     * {@code migration} stale, leaving the rest to that handoff; items from a batch that fails stay here.
+     */
+    private void migrate(PeerInfo newNode, long migration)
+    {
+        if (migration != migrations.get())
+            return;
+
+        // Taken now rather than when the predecessor was detected, so that items an earlier handoff has already
+        // moved are not sent again
+        List<DataItem> items = new ArrayList<>();
+        for (DataItem d : valuesInInterval(storedFiles, ownInfo.getID(), newNode.getID()))
         {
-            if (newNode != PeerInfo.NULL_PEER)
+            // Items without contents have no file to stream; they are removed once sent
+            if (d.getFile() != null)
+                items.add(d);
+            else if (inFlight.add(d))
+                send(d, newNode.getListeningAddress());
+        }
+        if (items.isEmpty())
+            return;
+        LOGGER.log(Level.INFO, "Transferring " + items.size() + " data items to newly joined node " + newNode.getListeningAddress());
+
+        for (int from = 0; from < items.size(); from += MIGRATION_BATCH_SIZE)
+        {
+            if (migration != migrations.get())
             {
-                for(DataItem d : storedFiles.values())
-                    if (d.getID().inInterval(ownInfo.getID(), newNode.getID()) || d.getID().compareTo(newNode.getID()) == 0)
-                    {
-                        LOGGER.log(Level.INFO, "Transferring " + d + " to newly joined node" + newNode.getListeningAddress());
-                        send(d, newNode.getListeningAddress());
-                    }
+                LOGGER.log(Level.INFO, "Handoff to " + newNode.getListeningAddress() + " superseded by a newer predecessor, "
+                        + (items.size() - from) + " data items left for the next handoff");
+                return;
             }
+            List<DataItem> batch = items.subList(from, Math.min(items.size(), from + MIGRATION_BATCH_SIZE));
+            try
+            {
+                FileTransfer.send(batch, newNode.getListeningAddress());
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                LOGGER.log(Level.WARNING, "Unable to transfer " + (items.size() - from) + " data items to "
+                        + newNode.getListeningAddress() + ", keeping them: " + ex.getMessage());
+                return;
+            }
+
+            for (DataItem d : batch)
+            {
+                // An item stored here again during the transfer is a different instance and is kept
+                if (storedFiles.remove(d.getID(), d))
+                    d.delete();
+            }
+            LOGGER.log(Level.INFO, "Transferred " + batch.size() + " data items to " + newNode.getListeningAddress() + ". Deleted them.");
         }
+        printHeldDataItems();
+    }
+
+    /**
+     * Returns the values of {@code map} whose keys lie in the ring interval (end1, end2], the keys a peer at
+     * {@code end2} whose predecessor is at {@code end1} is responsible for. Only the entries in the interval are
+     * visited: a view of {@code map} if the interval does not wrap around zero, otherwise a copy of its two ends.
+     * Equal endpoints stand for the whole ring.
+     */
+    static <V> Collection<V> valuesInInterval(NavigableMap<ID, V> map, ID end1, ID end2)
+    {
+        if (end1.compareTo(end2) < 0)
+            return map.subMap(end1, false, end2, true).values();
+
+        List<V> values = new ArrayList<>(map.tailMap(end1, false).values());
+        values.addAll(map.headMap(end2, true).values());
+        return values;
     }
 
     private void lastGasp()
     {
         // Send out a last gasp if needed
-        synchronized (storedFiles)
-        {
-            synchronized (fingerTable)
-            {
-                synchronized (predecessor)
-                {
-                    PeerInfo pred = getPredecessor();
-                    PeerInfo succ = fingerTable.getSuccessor();
+        RoutingState current = state.get();
+        PeerInfo pred = current.getPredecessor();
+        PeerInfo succ = current.getSuccessor();
 
-                    List<DataItem> dataItemList = new ArrayList<>();
+        List<DataItem> dataItemList = new ArrayList<>();
 
-                    // Prepare a list of data items to transfer to successor
-                    if (succ != PeerInfo.NULL_PEER && pred != PeerInfo.NULL_PEER)
-                    {
-                        for(DataItem d : storedFiles.values()) {
-                            if (d.getID().inInterval(pred.getID(), ownInfo.getID()) || d.getID().compareTo(ownInfo.getID()) == 0) {
-                                LOGGER.log(Level.INFO, "Transferring " + d + " file before dying to successor at " + succ.getListeningAddress());
-                                dataItemList.add(d);
-                            }
-                        }
-                    }
+        // Prepare a list of data items to transfer to successor
+        if (succ != PeerInfo.NULL_PEER && pred != PeerInfo.NULL_PEER)
+        {
+            for (DataItem d : valuesInInterval(storedFiles, pred.getID(), ownInfo.getID()))
+            {
+                LOGGER.log(Level.INFO, "Transferring " + d + " file before dying to successor at " + succ.getListeningAddress());
+                dataItemList.add(d);
+            }
+        }
 
-                    if (pred != PeerInfo.NULL_PEER)
-                    {
-                        messenger.send(new LastGaspSuccessor(succ), pred.getListeningAddress());
-                    }
+        if (pred != PeerInfo.NULL_PEER)
+        {
+            messenger.send(new LastGaspSuccessor(succ), pred.getListeningAddress());
+        }
 
-                    if (succ != PeerInfo.NULL_PEER)
-                    {
-                        messenger.send(new LastGaspPredecessor(pred, dataItemList), succ.getListeningAddress());
-                    }
-                }
-            }
+        if (succ != PeerInfo.NULL_PEER)
+        {
+            messenger.send(new LastGaspPredecessor(pred, dataItemList), succ.getListeningAddress());
         }
     }
 
@@ -289,11 +520,8 @@ public abstract class Peer implements Runnable
     private void handleDataItemMsg(DataItem msg)
     {
         LOGGER.log(Level.INFO, "Received file (id " + msg.getID() + "): " + msg.getFilePath());
-        synchronized (storedFiles)
-        {
-            storedFiles.put(msg.getID(), msg);
-            printHeldDataItems();
-        }
+        storedFiles.put(msg.getID(), msg);
+        printHeldDataItems();
     }
 
     /*
@@ -304,6 +532,8 @@ public abstract class Peer implements Runnable
     {
         ownShutdown();
 
+        migrator.shutdown();
+
         lastGasp();
 
         LOGGER.log(Level.INFO, "Shutting down the Chord layer");
@@ -345,10 +575,8 @@ public abstract class Peer implements Runnable
         {
             DataItem d = (DataItem) ev.getMessage();
             LOGGER.log(Level.INFO, "Successfully transferred the file " + d.getFilePath() + ". Now deleting it.");
-            synchronized (storedFiles)
-            {
-                storedFiles.remove(d.getID());
-            }
+            storedFiles.remove(d.getID());
+            inFlight.remove(d);
             d.delete();
             printHeldDataItems();
         }
@@ -408,6 +636,12 @@ public abstract class Peer implements Runnable
                 case DATA_ITEM:
                     handleDataItemMsg((DataItem) msg);
                     break;
+                case NEXT_HOP_REQUEST:
+                    handleNextHopRequestMsg((NextHopRequest) msg);
+                    break;
+                case NEXT_HOP_RESULT:
+                    handleNextHopResultMsg((NextHopResult) msg);
+                    break;
             }
         }
         else
@@ -419,16 +653,11 @@ public abstract class Peer implements Runnable
     private void handleLastGaspPredMsg(LastGaspPredecessor msg) {
 
         PeerInfo pred = msg.getPredecessor();
-        synchronized (predecessor)
+        RoutingState.update(state, s -> s.withPredecessor(pred));
+        predecessorHeardMillis = System.currentTimeMillis();
+        for(DataItem d: msg.getDataItemList())
         {
-            synchronized (storedFiles)
-            {
-                setPredecessor(pred);
-                for(DataItem d: msg.getDataItemList())
-                {
-                    storedFiles.put(d.getID(), d);
-                }
-            }
+            storedFiles.put(d.getID(), d);
         }
         printState();
     }
@@ -436,7 +665,7 @@ public abstract class Peer implements Runnable
     private void handleLastGaspSuccMsg(LastGaspSuccessor msg)
     {
         PeerInfo succ = msg.getSuccessor();
-        fingerTable.setSuccessor(succ);
+        RoutingState.update(state, s -> s.withSuccessor(succ));
         printState();
     }
 
@@ -447,6 +676,7 @@ public abstract class Peer implements Runnable
             MessageSent msev= ((MessageSent) ev);
             if (msev.getMessage().getMessageType() instanceof ChordMessageType)
             {
+                handleUnreachablePeer(msev.getDestination());
                 switch ((ChordMessageType) msev.getMessage().getMessageType()) {
                     case LOOKUP_REQUEST: {
                         LookupRequest r = (LookupRequest) msev.getMessage();
@@ -454,7 +684,7 @@ public abstract class Peer implements Runnable
                             case FINGER_UPDATE:
                             case NEW_NODE:
                                 LOGGER.log(Level.WARNING, "Failed LOOKUP_REQUEST started by " + r.getSource() + " with cause " + r.getCause() + ". Retrying.");
-                                fingerTable.setPeerInfo(r.getID(), PeerInfo.NULL_PEER);
+                                RoutingState.update(state, s -> s.withFinger(r.getID(), PeerInfo.NULL_PEER));
                                 new Thread(() -> {
                                     try
                                     {
@@ -476,6 +706,20 @@ public abstract class Peer implements Runnable
                         LOGGER.log(Level.WARNING, "Failed to send PRED_REQUEST to successor");
                         break;
                     }
+                    case NEXT_HOP_REQUEST:
+                    {
+                        NextHopRequest r = (NextHopRequest) msev.getMessage();
+                        IterativeLookup lookup = lookups.get(r.getLookupNumber());
+                        if (lookup != null)
+                            probe(lookup, lookup.onFailure(msev.getDestination()));
+                        break;
+                    }
+                    case DATA_ITEM:
+                    {
+                        // Kept here; the next handoff may send it again
+                        inFlight.remove(msev.getMessage());
+                        break;
+                    }
                     default:
                         break;
                 }
@@ -494,9 +738,7 @@ public abstract class Peer implements Runnable
     protected synchronized void overrideID(ID id)
     {
         this.ownInfo = new PeerInfo(id, this.ownInfo.getListeningAddress(), this.ownInfo.getName());
-        this.fingerTable = new FingerTable(this.ownInfo.getID());
-        this.predecessor = PeerInfo.NULL_PEER;
-        this.joined = false;
+        this.state.set(new RoutingState(this.ownInfo.getID(), SUCCESSOR_LIST_LENGTH));
     }
 
     protected abstract void setup();
@@ -517,34 +759,42 @@ public abstract class Peer implements Runnable
 
     public void lookup(ID id, LookupCause cause)
     {
-        synchronized (fingerTable) {
-            PeerInfo pred = getClosestNodePrecedingId(id);
-            // Query dies if not enough info is there
-            if (pred == PeerInfo.NULL_PEER)
-                return;
+        if (lookupMode == LookupMode.ITERATIVE)
+        {
+            startIterativeLookup(id, cause, null);
+            return;
+        }
 
-            LookupRequest msg = new LookupRequest(id, ownInfo, cause);
+        RoutingState current = state.get();
+        PeerInfo pred = getClosestNodePrecedingId(current, id);
+        // Query dies if not enough info is there
+        if (pred == PeerInfo.NULL_PEER)
+            return;
 
-            if (pred.getID().compareTo(ownInfo.getID()) == 0)
-                send(new LookupResult(fingerTable.getSuccessor(), msg), ownInfo.getListeningAddress());
-            else
-                send(msg, pred.getListeningAddress());
-        }
+        LookupRequest msg = new LookupRequest(id, ownInfo, cause);
+
+        if (pred.getID().compareTo(ownInfo.getID()) == 0)
+            send(new LookupResult(current.getSuccessor(), msg), ownInfo.getListeningAddress());
+        else
+            send(msg, pred.getListeningAddress());
     }
 
     public synchronized void join(PeerInfo anotherPeer)
     {
-        if (!joined)
+        if (!state.get().isJoined())
         {
             // If IDs match, that means this is the only node in the entire chord ring
             if (anotherPeer.getID().compareTo(ownInfo.getID()) == 0)
             {
-                fingerTable.setSuccessor(ownInfo);
-                predecessor = ownInfo;
-                joined = true;
+                PeerInfo self = ownInfo;
+                RoutingState.update(state, s -> s.withSuccessor(self).withPredecessor(self).asJoined());
                 LOGGER.log(Level.INFO, "Identified as first node in the network");
                 printState();
             }
+            else if (lookupMode == LookupMode.ITERATIVE)
+            {
+                startIterativeLookup(ownInfo.getID(), LookupCause.NEW_NODE, Collections.singletonList(anotherPeer));
+            }
             else
             {
                 send(new LookupRequest(ownInfo.getID(), ownInfo, LookupCause.NEW_NODE), anotherPeer.getListeningAddress());
@@ -0,0 +1,270 @@
+package a2.chord.peer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Everything a peer routes with: its fingers, whose first entry is its successor, the next few peers after it
+ * to fall back on if it fails, its predecessor, and whether it has joined the ring. Instances are immutable. A
+ * peer publishes the current state through an {@link AtomicReference} and replaces it with
+ * {@link #update(AtomicReference, UnaryOperator)}, so lookups read one consistent state without locking while
+ * stabilization replaces it.
+ */
+final class RoutingState
+{
+    private final ID ownID;
+    private final int successorListLength;
+    private final FingerTable fingerTable;
+    // The successor followed by the peers after it in ring order; empty until the successor is known
+    private final List<PeerInfo> successors;
+    private final PeerInfo predecessor;
+    private final boolean joined;
+
+    /**
+     * Creates the state of a peer that has not joined yet: no fingers, successors or predecessor
+     * @param ownID ID of the peer
+     * @param successorListLength number of successors to keep, the successor included
+     */
+    RoutingState(ID ownID, int successorListLength)
+    {
+        this(ownID, successorListLength, new FingerTable(ownID), Collections.<PeerInfo>emptyList(), PeerInfo.NULL_PEER, false);
+        if (successorListLength < 1)
+            throw new IllegalArgumentException("Successor list length must be >= 1");
+    }
+
+    private RoutingState(ID ownID, int successorListLength, FingerTable fingerTable, List<PeerInfo> successors,
+                         PeerInfo predecessor, boolean joined)
+    {
+        this.ownID = ownID;
+        this.successorListLength = successorListLength;
+        this.fingerTable = fingerTable;
+        this.successors = successors;
+        this.predecessor = predecessor;
+        this.joined = joined;
+    }
+
+    FingerTable getFingerTable()
+    {
+        return fingerTable;
+    }
+
+    PeerInfo getSuccessor()
+    {
+        return fingerTable.getSuccessor();
+    }
+
+    /**
+     * Returns the successor followed by the peers after it, closest first
+     */
+    List<PeerInfo> getSuccessors()
+    {
+        return successors;
+    }
+
+    /**
+     * Returns the known peer closest to {@code id} without passing it, from the fingers and the successor list.
+     * The successor list covers the stretch right after this peer densely, so it can beat the fingers there and
+     * still has entries when the fingers pointing at a failed peer have been cleared.
+     * @return the closest preceding peer, or {@link PeerInfo#NULL_PEER} if no known peer precedes {@code id}
+     */
+    PeerInfo getClosestPrecedingPeer(ID id)
+    {
+        PeerInfo closest = fingerTable.getClosestPrecedingPeer(id);
+        for (PeerInfo p : successors)
+        {
+            ID candidate = p.getID();
+            if (candidate.inInterval(ownID, id)
+                    && (closest == PeerInfo.NULL_PEER || candidate.inInterval(closest.getID(), id)))
+                closest = p;
+        }
+        return closest;
+    }
+
+    /**
+     * Returns up to {@code max} distinct known peers that precede {@code id}, from the fingers and the successor
+     * list, the closest to {@code id} first. This is what an iterative lookup asks, so like
+     * {@link #getClosestPrecedingPeer(ID)} it still has candidates when the fingers pointing at a failed peer have
+     * been cleared.
+     */
+    List<PeerInfo> getClosestPrecedingPeers(ID id, int max)
+    {
+        // No more distinct peers can precede the ID than there are fingers
+        List<PeerInfo> candidates = new ArrayList<>(fingerTable.getClosestPrecedingPeers(id, ownID.sizeInBits()));
+        Set<ID> added = new HashSet<>();
+        for (PeerInfo p : candidates)
+            added.add(p.getID());
+        for (PeerInfo p : successors)
+            if (p.getID().inInterval(ownID, id) && added.add(p.getID()))
+                candidates.add(p);
+
+        // All candidates lie between this peer and the ID, where one is closer to the ID if the other precedes it
+        candidates.sort((a, b) -> a.getID().compareTo(b.getID()) == 0 ? 0 :
+                                  a.getID().inInterval(b.getID(), id) ? -1 : 1);
+        return candidates.size() > max ? new ArrayList<>(candidates.subList(0, max)) : candidates;
+    }
+
+    PeerInfo getPredecessor()
+    {
+        return predecessor;
+    }
+
+    boolean isJoined()
+    {
+        return joined;
+    }
+
+    /**
+     * Returns a state with {@code successor} as successor. Known successors that come after it are kept behind it.
+     */
+    RoutingState withSuccessor(PeerInfo successor)
+    {
+        return new RoutingState(ownID, successorListLength, fingerTable.withSuccessor(successor),
+                                successorList(successor, successors), predecessor, joined);
+    }
+
+    /**
+     * Returns a state whose successor list is the successor followed by {@code successorsOfSuccessor}, the list
+     * the successor reported during stabilization, or this state if nothing changes
+     */
+    RoutingState withSuccessorsOfSuccessor(List<PeerInfo> successorsOfSuccessor)
+    {
+        PeerInfo successor = getSuccessor();
+        if (successor == PeerInfo.NULL_PEER)
+            return this;
+        List<PeerInfo> updated = successorList(successor, successorsOfSuccessor);
+        return sameIDs(updated, successors) ? this :
+               new RoutingState(ownID, successorListLength, fingerTable, updated, predecessor, joined);
+    }
+
+    /**
+     * Returns a state that no longer routes to the peer with ID {@code failed}: it is dropped from the successor
+     * list and the fingers, and if it was the successor, the next one in the list takes its place. With no
+     * successor left, {@code self} becomes the successor until stabilization finds another. Returns this state if it
+     * does not know the peer.
+     */
+    RoutingState withoutPeer(ID failed, PeerInfo self)
+    {
+        List<PeerInfo> remaining = new ArrayList<>(successors.size());
+        for (PeerInfo p : successors)
+            if (p.getID().compareTo(failed) != 0)
+                remaining.add(p);
+
+        FingerTable updated = fingerTable.withoutPeer(failed);
+        if (updated == fingerTable && remaining.size() == successors.size())
+            return this;
+
+        PeerInfo successor = getSuccessor();
+        if (successor != PeerInfo.NULL_PEER && successor.getID().compareTo(failed) == 0)
+        {
+            PeerInfo next = remaining.isEmpty() ? PeerInfo.NULL_PEER : remaining.get(0);
+            if (next == PeerInfo.NULL_PEER)
+            {
+                // Pointing at itself makes the next heartbeat take the predecessor as successor
+                return new RoutingState(ownID, successorListLength, updated, Collections.<PeerInfo>emptyList(),
+                                        predecessor, joined).withSuccessor(self);
+            }
+            updated = updated.withSuccessor(next);
+        }
+        return new RoutingState(ownID, successorListLength, updated, Collections.unmodifiableList(remaining),
+                                predecessor, joined);
+    }
+
+    /**
+     * Returns a state with the finger starting at {@code finger} pointing at {@code peerInfo}, or this state if
+     * {@code finger} does not start any finger
+     */
+    RoutingState withFinger(ID finger, PeerInfo peerInfo)
+    {
+        FingerTable updated = fingerTable.withPeerInfo(finger, peerInfo);
+        if (updated == fingerTable)
+            return this;
+        // The first finger is the successor, which heads the successor list
+        if (updated.getSuccessor() != fingerTable.getSuccessor())
+            return withSuccessor(updated.getSuccessor()).withFingerTable(updated);
+        return withFingerTable(updated);
+    }
+
+    RoutingState withPredecessor(PeerInfo predecessor)
+    {
+        return new RoutingState(ownID, successorListLength, fingerTable, successors, predecessor, joined);
+    }
+
+    RoutingState asJoined()
+    {
+        return new RoutingState(ownID, successorListLength, fingerTable, successors, predecessor, true);
+    }
+
+    private RoutingState withFingerTable(FingerTable updated)
+    {
+        return new RoutingState(ownID, successorListLength, updated, successors, predecessor, joined);
+    }
+
+    /**
+     * Builds a successor list of {@code successor} followed by the peers of {@code after} that lie strictly
+     * between it and this peer, in the order given, without duplicates and cut to the configured length
+     */
+    private List<PeerInfo> successorList(PeerInfo successor, List<PeerInfo> after)
+    {
+        if (successor == PeerInfo.NULL_PEER)
+            return Collections.emptyList();
+
+        List<PeerInfo> list = new ArrayList<>(successorListLength);
+        Set<ID> added = new HashSet<>();
+        list.add(successor);
+        added.add(successor.getID());
+        for (PeerInfo p : after)
+        {
+            if (list.size() == successorListLength)
+                break;
+            if (p != PeerInfo.NULL_PEER && p.getID().inInterval(successor.getID(), ownID) && added.add(p.getID()))
+                list.add(p);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private static boolean sameIDs(List<PeerInfo> a, List<PeerInfo> b)
+    {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++)
+            if (a.get(i).getID().compareTo(b.get(i).getID()) != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Replaces the state held by {@code state} with the one {@code update} derives from it, retrying if another
+     * thread replaced it in the meantime. {@code update} may therefore run more than once, and must not have side
+     * effects; it returns the state it was given to leave it unchanged.
+     * @param state reference holding the current state
+     * @param update function deriving the new state from the current one
+     * @return {@code true} if the state was replaced, {@code false} if {@code update} left it unchanged
+     */
+    static boolean update(AtomicReference<RoutingState> state, UnaryOperator<RoutingState> update)
+    {
+        while (true)
+        {
+            RoutingState current = state.get();
+            RoutingState next = update.apply(current);
+            if (next == current)
+                return false;
+            if (state.compareAndSet(current, next))
+                return true;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder stringBuilder = new StringBuilder(String.format("Predecessor: %1$s%n", predecessor));
+        stringBuilder.append("Successors:");
+        for (PeerInfo p : successors)
+            stringBuilder.append(' ').append(p.getID());
+        return stringBuilder.append(fingerTable).toString();
+    }
+}
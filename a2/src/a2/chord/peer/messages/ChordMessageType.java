@@ -9,5 +9,7 @@ public enum ChordMessageType
     PRED_UPDATE,
     LAST_GASP_PRED,
     LAST_GASP_SUCC,
-    DATA_ITEM
+    DATA_ITEM,
+    NEXT_HOP_REQUEST,
+    NEXT_HOP_RESULT
 }
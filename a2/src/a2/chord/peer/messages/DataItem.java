@@ -3,12 +3,17 @@ package a2.chord.peer.messages;
 import a2.chord.peer.ID;
 import a2.hash.CRC16;
 import a2.hash.Hasher;
-import a2.transport.Message;
+import a2.transport.FileMessage;
 
 import java.io.*;
 import java.math.BigInteger;
 
-public class DataItem implements Message<ChordMessageType>
+/**
+ * A file stored in the ring under the CRC16 of its contents. Sent on its own, its contents go straight from the
+ * file to the socket with {@link a2.transport.FileTransfer}; inside another message they follow the header in the
+ * object stream. A dummy item names a file without carrying it.
+ */
+public class DataItem implements FileMessage<ChordMessageType>
 {
     private static final File outDir = new File(System.getProperty("java.io.tmpdir"));
     private Hasher hasher;
@@ -50,10 +55,9 @@ public class DataItem implements Message<ChordMessageType>
 
         hasher.reset();
 
-        byte[] buffer = new byte[1024];
+        byte[] buffer = new byte[64 * 1024];
 
-        try(FileInputStream f = new FileInputStream(pathToFile);
-            BufferedInputStream bf = new BufferedInputStream(f))
+        try(FileInputStream f = new FileInputStream(pathToFile))
         {
             int bytesRead;
             while ((bytesRead = f.read(buffer)) != -1)
@@ -92,17 +96,37 @@ public class DataItem implements Message<ChordMessageType>
     }
 
     @Override
-    public void writeExternal(ObjectOutput out) throws IOException
+    public File getFile()
+    {
+        return dummy ? null : pathToFile;
+    }
+
+    @Override
+    public void writeHeader(ObjectOutput out) throws IOException
     {
         out.writeUTF(pathToFile.getName());
         out.writeObject(this.id);
         out.writeBoolean(dummy);
+    }
+
+    @Override
+    public void readHeader(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        String fileName = in.readUTF();
+        this.pathToFile = new File(outDir, fileName);
+        this.id = (ID) in.readObject();
+        this.dummy = in.readBoolean();
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        writeHeader(out);
 
         if (!dummy) {
             byte[] buffer = new byte[1024];
 
-            try (FileInputStream f = new FileInputStream(pathToFile);
-                 BufferedInputStream bf = new BufferedInputStream(f)) {
+            try (FileInputStream f = new FileInputStream(pathToFile)) {
                 int bytesRead;
                 while ((bytesRead = f.read(buffer)) != -1) {
                     out.write(buffer, 0, bytesRead);
@@ -114,10 +138,7 @@ public class DataItem implements Message<ChordMessageType>
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
     {
-        String fileName = in.readUTF();
-        this.pathToFile = new File(outDir, fileName);
-        this.id = (ID) in.readObject();
-        this.dummy = in.readBoolean();
+        readHeader(in);
 
         if (!dummy) {
             byte[] buffer = new byte[1024];
@@ -0,0 +1,88 @@
+package a2.chord.peer.messages;
+
+import a2.chord.peer.ID;
+import a2.chord.peer.PeerInfo;
+import a2.transport.Message;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * One step of an iterative lookup: asks a peer which peers it knows that are closest to an ID, or, if the ID
+ * falls between it and its successor, for that successor. The peer answers the source directly with a
+ * {@link NextHopResult} and does not forward anything.
+ */
+public class NextHopRequest implements Message<ChordMessageType>
+{
+    private ID idToBeLookedUp;
+    private PeerInfo source;
+    private int lookupNumber;
+
+    public NextHopRequest()
+    {
+        this.idToBeLookedUp = null;
+        this.source = PeerInfo.NULL_PEER;
+        this.lookupNumber = 0;
+    }
+
+    /**
+     * @param id ID being looked up
+     * @param source peer driving the lookup, which the answer is sent to
+     * @param lookupNumber number the source uses to match the answer to its lookup
+     */
+    public NextHopRequest(ID id, PeerInfo source, int lookupNumber)
+    {
+        this.idToBeLookedUp = id;
+        this.source = source;
+        this.lookupNumber = lookupNumber;
+    }
+
+    @Override
+    public ChordMessageType getMessageType()
+    {
+        return ChordMessageType.NEXT_HOP_REQUEST;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        if (this.source == PeerInfo.NULL_PEER)
+            throw new IllegalStateException("Attempt to write with source set to NULL_PEER");
+        if (this.idToBeLookedUp == null)
+            throw new IllegalStateException("Attempt to write with ID set to null");
+
+        out.writeObject(idToBeLookedUp);
+        out.writeObject(source);
+        out.writeInt(lookupNumber);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        this.idToBeLookedUp = (ID) in.readObject();
+        this.source = (PeerInfo) in.readObject();
+        this.lookupNumber = in.readInt();
+    }
+
+    public ID getID()
+    {
+        return idToBeLookedUp;
+    }
+
+    public PeerInfo getSource()
+    {
+        return source;
+    }
+
+    public int getLookupNumber()
+    {
+        return lookupNumber;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getMessageType() + ": Lookup " + lookupNumber + ", ID: " + idToBeLookedUp + ", Source: " + source;
+    }
+}
@@ -0,0 +1,133 @@
+package a2.chord.peer.messages;
+
+import a2.chord.peer.ID;
+import a2.chord.peer.PeerInfo;
+import a2.transport.Message;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answer to a {@link NextHopRequest}. Either the lookup is complete and {@link #getSuccessor()} is the peer
+ * responsible for the ID, or {@link #getNextHops()} lists the peers the responder knows that are closest to the
+ * ID without passing it, closest first.
+ */
+public class NextHopResult implements Message<ChordMessageType>
+{
+    private ID lookedUpID;
+    private int lookupNumber;
+    private PeerInfo responder;
+    private boolean complete;
+    private List<PeerInfo> peers;
+
+    public NextHopResult()
+    {
+        this.lookedUpID = null;
+        this.lookupNumber = 0;
+        this.responder = PeerInfo.NULL_PEER;
+        this.complete = false;
+        this.peers = new ArrayList<>();
+    }
+
+    private NextHopResult(NextHopRequest request, PeerInfo responder, boolean complete, List<PeerInfo> peers)
+    {
+        this.lookedUpID = request.getID();
+        this.lookupNumber = request.getLookupNumber();
+        this.responder = responder;
+        this.complete = complete;
+        this.peers = new ArrayList<>(peers);
+    }
+
+    /**
+     * Creates the answer of a peer whose successor is responsible for the requested ID
+     */
+    public static NextHopResult complete(NextHopRequest request, PeerInfo responder, PeerInfo successor)
+    {
+        return new NextHopResult(request, responder, true, Collections.singletonList(successor));
+    }
+
+    /**
+     * Creates the answer of a peer that knows peers closer to the requested ID than itself
+     */
+    public static NextHopResult nextHops(NextHopRequest request, PeerInfo responder, List<PeerInfo> nextHops)
+    {
+        return new NextHopResult(request, responder, false, nextHops);
+    }
+
+    @Override
+    public ChordMessageType getMessageType()
+    {
+        return ChordMessageType.NEXT_HOP_RESULT;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        if (this.responder == null || this.responder == PeerInfo.NULL_PEER)
+            throw new IllegalStateException("Attempt to write with responder set to NULL_PEER");
+        if (this.lookedUpID == null)
+            throw new IllegalStateException("Attempt to write with ID set to null");
+        if (this.complete && this.peers.size() != 1)
+            throw new IllegalStateException("Attempt to write a complete result without exactly one successor");
+
+        out.writeObject(lookedUpID);
+        out.writeInt(lookupNumber);
+        out.writeObject(responder);
+        out.writeBoolean(complete);
+        out.writeInt(peers.size());
+        for(PeerInfo p: peers)
+            out.writeObject(p);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        this.lookedUpID = (ID) in.readObject();
+        this.lookupNumber = in.readInt();
+        this.responder = (PeerInfo) in.readObject();
+        this.complete = in.readBoolean();
+        int size = in.readInt();
+        for(int i = 0; i < size; i++)
+            peers.add((PeerInfo) in.readObject());
+    }
+
+    public ID getLookedUpID()
+    {
+        return lookedUpID;
+    }
+
+    public int getLookupNumber()
+    {
+        return lookupNumber;
+    }
+
+    public PeerInfo getResponder()
+    {
+        return responder;
+    }
+
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Returns the peer responsible for the looked up ID
+     * @throws IllegalStateException if the lookup is not complete
+     */
+    public PeerInfo getSuccessor()
+    {
+        if (!complete)
+            throw new IllegalStateException("getSuccessor() called on a NextHopResult that is not complete");
+        return peers.get(0);
+    }
+
+    public List<PeerInfo> getNextHops()
+    {
+        return complete ? Collections.<PeerInfo>emptyList() : Collections.unmodifiableList(peers);
+    }
+}
@@ -6,19 +6,29 @@ import a2.transport.Message;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Answer to a {@link PredecessorRequest}: the predecessor of the responder, and the responder followed by its own
+ * successors, for the requesting peer to build its successor list from
+ */
 public class PredecessorResult implements Message<ChordMessageType>
 {
     private PeerInfo predecessor;
+    private List<PeerInfo> successors;
 
-    public PredecessorResult(PeerInfo predecessor)
+    public PredecessorResult(PeerInfo predecessor, List<PeerInfo> successors)
     {
         this.predecessor = predecessor;
+        this.successors = new ArrayList<>(successors);
     }
 
     public PredecessorResult()
     {
         this.predecessor = PeerInfo.NULL_PEER;
+        this.successors = new ArrayList<>();
     }
 
     @Override
@@ -33,16 +43,30 @@ public class PredecessorResult implements Message<ChordMessageType>
         if (this.predecessor == PeerInfo.NULL_PEER)
             throw new IllegalStateException("Attempt to write with predecessor set to NULL_PEER");
         out.writeObject(predecessor);
+        out.writeInt(successors.size());
+        for(PeerInfo p: successors)
+            out.writeObject(p);
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
     {
         this.predecessor = (PeerInfo) in.readObject();
+        int size = in.readInt();
+        for(int i = 0; i < size; i++)
+            successors.add((PeerInfo) in.readObject());
     }
 
     public PeerInfo getPredecessor()
     {
         return predecessor;
     }
+
+    /**
+     * Returns the responder followed by its successors, closest first
+     */
+    public List<PeerInfo> getSuccessors()
+    {
+        return Collections.unmodifiableList(successors);
+    }
 }
@@ -2,28 +2,46 @@ package a2.hash;
 
 import a2.util.ByteConverter;
 
+/**
+ * The 16 bit CRC of {@code sun.misc.CRC16}: polynomial 0x1021, initial value 0, message bits shifted in most
+ * significant first without augmentation. Processes a byte at a time with a table of what shifting out each high
+ * byte XORs into the value, built from the original bit-at-a-time loop, so it produces the same values.
+ */
 public final class CRC16 implements Hasher
 {
-    private SunCRC16 crc16 = new SunCRC16();
+    private static final int[] TABLE = new int[256];
+
+    static
+    {
+        for (int high = 0; high < TABLE.length; high++)
+            TABLE[high] = updateBitwise(high << 8, (byte) 0);
+    }
+
+    private int value;
 
     @Override
     public void update(int b)
     {
         for (byte i : ByteConverter.convert(b))
-            crc16.update(i);
+            value = update(value, i);
     }
 
     @Override
     public void update(byte[] b, int off, int len)
     {
-        for (byte i : b)
-            crc16.update(i);
+        if (off < 0 || len < 0 || off > b.length - len)
+            throw new IllegalArgumentException("Bad offset " + off + " and length " + len + " for " + b.length + " bytes");
+
+        int crc = value;
+        for (int i = off, end = off + len; i < end; i++)
+            crc = update(crc, b[i]);
+        value = crc;
     }
 
     @Override
     public Hash getValue()
     {
-        byte[] hashed = ByteConverter.convert((short) crc16.value);
+        byte[] hashed = ByteConverter.convert((short) value);
         reset();
         return new Hash(hashed);
     }
@@ -31,7 +49,7 @@ public final class CRC16 implements Hasher
     @Override
     public void reset()
     {
-        crc16.reset();
+        value = 0;
     }
 
     @Override
@@ -40,6 +58,12 @@ public final class CRC16 implements Hasher
         return 2;
     }
 
+    private static int update(int crc, byte b)
+    {
+        // The byte shifted in never reaches the top within 8 bits, so only the high byte decides what is XORed in
+        return ((crc << 8) & 0xffff) ^ (b & 0xff) ^ TABLE[crc >>> 8];
+    }
+
     /*
     * Copyright (c) 1994, 1995, Oracle and/or its affiliates. All rights reserved.
     * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
@@ -64,52 +88,23 @@ public final class CRC16 implements Hasher
     * or visit www.oracle.com if you need additional information or have any
     * questions.
     */
-    private class SunCRC16
+    /**
+     * Updates {@code value} with {@code aByte} one bit at a time, as {@code sun.misc.CRC16.update} does
+     */
+    static int updateBitwise(int value, byte aByte)
     {
-        /**
-         * The CRC-16 class calculates a 16 bit cyclic redundancy check of a set
-         * of bytes. This error detecting code is used to determine if bit rot
-         * has occured in a byte stream.
-         */
+        int a, b;
 
-        /**
-         * value contains the currently computed CRC, set it to 0 initally
-         */
-        int value;
-
-        SunCRC16()
-        {
-            value = 0;
-        }
-
-        /**
-         * update CRC with byte b
-         */
-        void update(byte aByte)
-        {
-            int a, b;
-
-            a = (int) aByte;
-            for (int count = 7; count >= 0; count--) {
-                a = a << 1;
-                b = (a >>> 8) & 1;
-                if ((value & 0x8000) != 0) {
-                    value = ((value << 1) + b) ^ 0x1021;
-                } else {
-                    value = (value << 1) + b;
-                }
+        a = (int) aByte;
+        for (int count = 7; count >= 0; count--) {
+            a = a << 1;
+            b = (a >>> 8) & 1;
+            if ((value & 0x8000) != 0) {
+                value = ((value << 1) + b) ^ 0x1021;
+            } else {
+                value = (value << 1) + b;
             }
-            value = value & 0xffff;
-        }
-
-        /**
-         * reset CRC value to 0
-         */
-        void reset()
-        {
-            value = 0;
         }
+        return value & 0xffff;
     }
 }
-
-
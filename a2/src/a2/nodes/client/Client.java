@@ -24,7 +24,12 @@ public class Client extends Peer
 
     public Client(PeerInfo peerInfo, InetSocketAddress discoveryAddress, int hearbeatInterval)
     {
-        super(peerInfo, hearbeatInterval);
+        this(peerInfo, discoveryAddress, hearbeatInterval, LookupMode.RECURSIVE);
+    }
+
+    public Client(PeerInfo peerInfo, InetSocketAddress discoveryAddress, int hearbeatInterval, LookupMode lookupMode)
+    {
+        super(peerInfo, hearbeatInterval, lookupMode);
         this.discoveryAddress = discoveryAddress;
         this.registered = false;
     }
@@ -36,6 +41,7 @@ public class Client extends Peer
             int listeningPort = -1;
             InetSocketAddress discoveryAddress = null;
             int hearbeatInterval = -1;
+            LookupMode lookupMode = LookupMode.RECURSIVE;
             PeerInfo ownInfo = null;
             try {
 
@@ -54,6 +60,18 @@ public class Client extends Peer
                     printUsage();
                     System.exit(0);
                 }
+                if (args.length >= 5)
+                {
+                    try {
+                        lookupMode = LookupMode.valueOf(args[4].toUpperCase());
+                    }
+                    catch(IllegalArgumentException ex)
+                    {
+                        LOGGER.log(Level.SEVERE, "Unknown lookup mode " + args[4]);
+                        printUsage();
+                        System.exit(0);
+                    }
+                }
             }
             catch (NumberFormatException ex) {
                 LOGGER.log(Level.SEVERE, "Unable to parse port number");
@@ -72,7 +90,7 @@ public class Client extends Peer
                 System.exit(0);
             }
 
-            Client c = new Client(ownInfo, discoveryAddress, hearbeatInterval);
+            Client c = new Client(ownInfo, discoveryAddress, hearbeatInterval, lookupMode);
             Scanner scanner = new Scanner(System.in);
             while(true)
             {
@@ -123,7 +141,7 @@ public class Client extends Peer
 
     public static void printUsage()
     {
-        System.out.println("Usage: " + Client.class.getCanonicalName() + " <ListeningPort> <DiscoveryHost> <Discovery Port> <Heartbeat Interval>");
+        System.out.println("Usage: " + Client.class.getCanonicalName() + " <ListeningPort> <DiscoveryHost> <Discovery Port> <Heartbeat Interval> [recursive|iterative]");
     }
 
     @Override
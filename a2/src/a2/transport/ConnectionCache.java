@@ -0,0 +1,192 @@
+package a2.transport;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one open connection per destination so that many messages can be sent over the same socket and
+ * {@code ObjectOutputStream}, instead of paying for a connect and teardown per message as {@link Sender} does.
+ * Each message is written as one object followed by a stream reset, so the receiving end reads a sequence of
+ * independent messages until the connection is closed. Connections that have not been used for the idle timeout
+ * are closed in the background.
+ *
+ * A connection that the remote end has already closed is only noticed when writing to it fails, in which case the
+ * message is sent again over a new connection. A message written just as the remote end dies may be lost without
+ * an error; the next one sent to that destination reports it.
+ */
+public final class ConnectionCache
+{
+    private static final Logger LOGGER = Logger.getLogger(ConnectionCache.class.getName());
+
+    private final Map<InetSocketAddress, Connection> connections = new ConcurrentHashMap<>();
+    private final long idleTimeoutMillis;
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Creates an empty cache that closes connections after {@code idleTimeoutMillis} without a message
+     * @param idleTimeoutMillis time after which an unused connection is closed
+     * @throws IllegalArgumentException if {@code idleTimeoutMillis} is not positive
+     */
+    public ConnectionCache(long idleTimeoutMillis)
+    {
+        if (idleTimeoutMillis <= 0)
+            throw new IllegalArgumentException("Idle timeout passed to ConnectionCache must be > 0");
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ConnectionCache-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends {@code msg} to {@code destination}, reusing the open connection to it if there is one
+     * @param msg message to be sent
+     * @param destination {@code InetSocketAddress} representing the destination to which the message should be sent
+     * @throws IOException if unable to open a socket connection to destination, or
+     * if there is an I/O error while sending the message
+     */
+    public void send(Message msg, InetSocketAddress destination) throws IOException
+    {
+        Connection c = connections.get(destination);
+        if (c != null)
+        {
+            try
+            {
+                c.write(msg);
+                return;
+            }
+            catch (IOException ex)
+            {
+                // Most likely closed at the other end since it was last used; try once more on a new connection
+                LOGGER.log(Level.FINE, "Cached connection to " + destination + " failed: " + ex.getMessage());
+                discard(destination, c);
+            }
+        }
+
+        c = open(destination);
+        try
+        {
+            c.write(msg);
+        }
+        catch (IOException ex)
+        {
+            discard(destination, c);
+            throw ex;
+        }
+    }
+
+    private Connection open(InetSocketAddress destination) throws IOException
+    {
+        Connection fresh = new Connection(new Socket(destination.getAddress(), destination.getPort()));
+        Connection existing = connections.putIfAbsent(destination, fresh);
+        if (existing == null)
+            return fresh;
+        // Another sender connected first; share its connection
+        fresh.close();
+        return existing;
+    }
+
+    private void discard(InetSocketAddress destination, Connection c)
+    {
+        connections.remove(destination, c);
+        c.close();
+    }
+
+    /**
+     * Closes every connection that has not been used for the idle timeout
+     */
+    public void evictIdle()
+    {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<InetSocketAddress, Connection> e : connections.entrySet())
+        {
+            if (now - e.getValue().lastUsed >= idleTimeoutMillis)
+            {
+                LOGGER.log(Level.FINE, "Closing idle connection to " + e.getKey());
+                discard(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of connections currently open
+     * @return number of cached connections
+     */
+    public int size()
+    {
+        return connections.size();
+    }
+
+    /**
+     * Closes every cached connection and stops evicting. Further sends open new connections that are never evicted.
+     */
+    public void close()
+    {
+        evictor.shutdownNow();
+        for (Map.Entry<InetSocketAddress, Connection> e : connections.entrySet())
+            discard(e.getKey(), e.getValue());
+    }
+
+    private static final class Connection
+    {
+        private final Socket sock;
+        private final ObjectOutputStream outs;
+        private volatile long lastUsed;
+
+        Connection(Socket sock) throws IOException
+        {
+            this.sock = sock;
+            try
+            {
+                this.outs = new ObjectOutputStream(sock.getOutputStream());
+            }
+            catch (IOException ex)
+            {
+                sock.close();
+                throw ex;
+            }
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        synchronized void write(Message msg) throws IOException
+        {
+            outs.writeObject(msg);
+            // Forget the objects written so far, so later messages are sent in full and the stream does not grow
+            outs.reset();
+            outs.flush();
+            lastUsed = System.currentTimeMillis();
+        }
+
+        synchronized void close()
+        {
+            try
+            {
+                outs.close();
+            }
+            catch (IOException ex)
+            {
+                // Closing the socket below is all that matters
+            }
+            try
+            {
+                sock.close();
+            }
+            catch (IOException ex)
+            {
+                LOGGER.log(Level.FINE, "Unable to close connection: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package a2.transport;
+
+import a2.transport.messenger.Messenger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A {@link Message} describing a file, whose contents {@link Messenger} sends with {@link FileTransfer} straight
+ * from the file to the socket rather than through the object stream. Only the header, written by
+ * {@link #writeHeader(ObjectOutput)}, is serialized; the receiving end creates the message with its no-arg
+ * constructor, reads the header back and writes the contents to {@link #getFile()}.
+ *
+ * The message must still write its contents in {@code writeExternal}, for when it is sent inside another message.
+ * @param <E> An enumeration representing the types of messages. This is the type returned by {@link #getMessageType()}
+ */
+public interface FileMessage<E extends Enum<E>> extends Message<E>
+{
+    /**
+     * Returns the file holding the contents: the one they are read from on the sending end, and, once the header
+     * has been read, the one they are written to on the receiving end
+     * @return the file, or {@code null} if the message carries no contents and can be sent as a plain message
+     */
+    File getFile();
+
+    /**
+     * Writes everything but the contents of the file
+     * @param out stream holding the header only
+     * @throws IOException if there is an I/O error while writing
+     */
+    void writeHeader(ObjectOutput out) throws IOException;
+
+    /**
+     * Reads back what {@link #writeHeader(ObjectOutput)} wrote
+     * @param in stream holding the header only
+     * @throws IOException if there is an I/O error while reading
+     * @throws ClassNotFoundException if a class written to the header cannot be found
+     */
+    void readHeader(ObjectInput in) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,240 @@
+package a2.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Packages the functionality to send {@link FileMessage}s over a connection of their own. The contents go from the
+ * file to the socket with {@link FileChannel#transferTo} and from the socket to the file with
+ * {@link FileChannel#transferFrom}, so they are neither copied through the Java heap nor framed by an object
+ * stream. A connection starts with {@link #MAGIC}, which tells it apart from an object stream on the same port,
+ * followed by one frame per message:
+ * <pre>
+ *     int length of the header | header | long length of the contents | contents
+ * </pre>
+ * where the header holds the class name of the message and what its {@link FileMessage#writeHeader} wrote. After
+ * the last frame the sender shuts down its side of the connection, and the receiver acknowledges with the number of
+ * messages whose contents it has written to their files, as an int, before closing. A sender that gets the
+ * acknowledgement can therefore drop its own copies.
+ */
+public final class FileTransfer
+{
+    /**
+     * First four bytes of a connection carrying files; an object stream starts with 0xACED0005 instead
+     */
+    public static final int MAGIC = 0x46494C45;
+
+    // Lets the kernel keep a large file moving while the receiver writes it out
+    private static final int SOCKET_BUFFER_BYTES = 1 << 20;
+    private static final int MAX_HEADER_BYTES = 1 << 16;
+
+    private FileTransfer() {}
+
+    /**
+     * Opens a connection to {@code destination}, sends every message in {@code msgs} with its contents, in order,
+     * one right after the other, and waits for the receiver to acknowledge them all before closing the connection
+     * @param msgs messages to be sent, each with a file
+     * @param destination {@code InetSocketAddress} representing the destination to which the messages should be sent
+     * @throws IOException if unable to open a socket connection to destination, if a file cannot be read, if
+     * there is an I/O error while sending the messages, or if the receiver does not acknowledge all of them
+     * @throws IllegalArgumentException if a message has no file
+     */
+    public static void send(List<? extends FileMessage> msgs, InetSocketAddress destination) throws IOException
+    {
+        try (SocketChannel ch = SocketChannel.open())
+        {
+            ch.socket().setSendBufferSize(SOCKET_BUFFER_BYTES);
+            // Lets a receiver that vanished be noticed eventually while waiting for the acknowledgement
+            ch.socket().setKeepAlive(true);
+            ch.connect(destination);
+
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            magic.putInt(MAGIC).flip();
+            writeFully(ch, magic);
+
+            for (FileMessage msg : msgs)
+                write(msg, ch);
+            ch.shutdownOutput();
+
+            ByteBuffer ack = ByteBuffer.allocate(4);
+            readFully(ch, ack, false);
+            int stored = ack.getInt(0);
+            if (stored != msgs.size())
+                throw new IOException("Receiver acknowledged " + stored + " of " + msgs.size() + " messages");
+        }
+    }
+
+    private static void write(FileMessage msg, SocketChannel ch) throws IOException
+    {
+        File file = msg.getFile();
+        if (file == null)
+            throw new IllegalArgumentException("Attempt to transfer " + msg.getMessageType() + " without a file");
+
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = in.size();
+            byte[] header = header(msg);
+            ByteBuffer frame = ByteBuffer.allocate(4 + header.length + 8);
+            frame.putInt(header.length).put(header).putLong(size).flip();
+            writeFully(ch, frame);
+
+            long position = 0;
+            while (position < size)
+            {
+                long sent = in.transferTo(position, size - position, ch);
+                if (sent <= 0 && position >= in.size())
+                    throw new EOFException("File " + file + " shrank while being sent");
+                position += sent;
+            }
+        }
+    }
+
+    private static byte[] header(FileMessage msg) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeUTF(msg.getClass().getName());
+            msg.writeHeader(out);
+        }
+        if (bytes.size() > MAX_HEADER_BYTES)
+            throw new IllegalArgumentException("Header of " + msg.getMessageType() + " exceeds " + MAX_HEADER_BYTES + " bytes");
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the frames of a connection whose {@link #MAGIC} the caller has already read, until the sender shuts it
+     * down, handing each message to {@code received} once its contents are in its file, then acknowledges them.
+     * Reading the contents is not subject to the socket timeout; a transfer cut off half way ends when the
+     * connection is closed.
+     * @param sock {@code Socket} representing the connection from the sender
+     * @param received called with every message received
+     * @throws IOException if there is an I/O error while receiving, or the connection ends in the middle of a frame
+     * @throws ClassNotFoundException if the class named in a header cannot be found
+     */
+    public static void receive(Socket sock, Consumer<FileMessage> received) throws IOException, ClassNotFoundException
+    {
+        ReadableByteChannel ch = sock.getChannel() != null ? sock.getChannel() : Channels.newChannel(sock.getInputStream());
+        ByteBuffer length = ByteBuffer.allocate(8);
+        int count = 0;
+        while (true)
+        {
+            length.clear().limit(4);
+            if (!readFully(ch, length, true))
+            {
+                acknowledge(sock, count);
+                return;
+            }
+            int headerLength = length.getInt(0);
+            if (headerLength <= 0 || headerLength > MAX_HEADER_BYTES)
+                throw new StreamCorruptedException("Invalid header length " + headerLength);
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            readFully(ch, header, false);
+            FileMessage msg = fromHeader(header.array());
+
+            length.clear();
+            readFully(ch, length, false);
+            long size = length.getLong(0);
+            if (size < 0)
+                throw new StreamCorruptedException("Invalid contents length " + size);
+
+            readContents(ch, msg.getFile(), size);
+            count++;
+            received.accept(msg);
+        }
+    }
+
+    private static void acknowledge(Socket sock, int count) throws IOException
+    {
+        WritableByteChannel ch = sock.getChannel() != null ? sock.getChannel() : Channels.newChannel(sock.getOutputStream());
+        ByteBuffer ack = ByteBuffer.allocate(4);
+        ack.putInt(count).flip();
+        writeFully(ch, ack);
+    }
+
+    private static FileMessage fromHeader(byte[] header) throws IOException, ClassNotFoundException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(header)))
+        {
+            String className = in.readUTF();
+            Class<?> c = Class.forName(className);
+            if (!FileMessage.class.isAssignableFrom(c))
+                throw new InvalidClassException(className, "Not a FileMessage");
+
+            FileMessage msg;
+            try
+            {
+                msg = (FileMessage) c.getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException ex)
+            {
+                throw new InvalidClassException(className, "Unable to create an instance: " + ex);
+            }
+            msg.readHeader(in);
+            return msg;
+        }
+    }
+
+    private static void readContents(ReadableByteChannel ch, File file, long size) throws IOException
+    {
+        if (file == null)
+            throw new StreamCorruptedException("Received a file message without a file to write to");
+
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long position = 0;
+            while (position < size)
+            {
+                long read = out.transferFrom(ch, position, size - position);
+                if (read <= 0)
+                    throw new EOFException("Connection closed after " + position + " of " + size + " bytes of " + file);
+                position += read;
+            }
+        }
+    }
+
+    private static void writeFully(WritableByteChannel ch, ByteBuffer buf) throws IOException
+    {
+        while (buf.hasRemaining())
+            ch.write(buf);
+    }
+
+    /**
+     * Fills {@code buf}, returning {@code false} if the channel ends before the first byte and {@code endAllowed}
+     */
+    private static boolean readFully(ReadableByteChannel ch, ByteBuffer buf, boolean endAllowed) throws IOException
+    {
+        boolean first = true;
+        while (buf.hasRemaining())
+        {
+            if (ch.read(buf) < 0)
+            {
+                if (first && endAllowed)
+                    return false;
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+            first = false;
+        }
+        return true;
+    }
+}
@@ -1,9 +1,11 @@
 package a2.transport;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
 
 /**
  * Allows to listen for incoming connections. This is meant as a base class for creating higher
@@ -13,7 +15,8 @@ public class Listener  {
 
 	private ServerSocket sock;
 	/**
-	 * Create a Listener instance to listen on {@code port}, reusing the port if {@code reuse} is {@code true}
+	 * Create a Listener instance to listen on {@code port}, reusing the port if {@code reuse} is {@code true}.
+	 * The server socket is opened through a channel, so that accepted connections have one for {@link FileTransfer}.
 	 * @param port port number to listen on for incoming connections
 	 * @param reuse if {@code true}, the port is reused
 	 */
@@ -21,12 +24,24 @@ public class Listener  {
 	{
 		try
 		{
-			sock = new ServerSocket(port);
+			sock = ServerSocketChannel.open().socket();
 			if (reuse)
 				sock.setReuseAddress(reuse);
+			sock.bind(new InetSocketAddress(port));
 		}
 		catch(IOException e)
 		{
+			if (sock != null)
+			{
+				try
+				{
+					sock.close();
+				}
+				catch(IOException ex)
+				{
+					// Never bound, nothing more to release
+				}
+			}
 			sock = null;
 		}
 	}
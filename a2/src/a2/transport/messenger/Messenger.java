@@ -5,6 +5,11 @@ import a2.transport.*;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -12,19 +17,39 @@ import java.util.logging.Logger;
 /**
  * A high-level class for managing all three functions necessary for network communications.
  * It listens on a specified port for new connections, and also accepts asynchronous requests for
- * sending and receiving messages. All messages are sent/received on a one-time basis i.e. connections created are
- * transient and limited to one message per connection.
+ * sending and receiving messages. Connections to a destination are opened on the first message and kept in a
+ * {@link ConnectionCache}, so that later messages to the same destination reuse them, and are closed once they have
+ * been idle for the idle timeout. Likewise, each accepted connection is read until the remote end closes it,
+ * generating one {@link MessageReceived} event per message. A {@link FileMessage} with a file is sent over a
+ * connection of its own with {@link FileTransfer} instead, and is received on the same port.
+ *
+ * A message written just as the remote end dies may be lost without a failed {@link MessageSent} event;
+ * the next message sent to that destination reports the failure.
  */
 public class Messenger
 {
     private static final Logger LOGGER = Logger.getLogger(Messenger.class.getName());
 
+    /**
+     * Time after which an unused connection is closed, unless given when creating the instance
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
     // Manager for underlying fixed size thread pool
     private ExecutorService executorService;
     // Completion wrapper around the thread pool to block until events are generated
     private ExecutorCompletionService<Event> executorCompletionService;
     // Listener instance for actually doing the listening for new connections
     private Listener listener;
+    // Open connections to the destinations messages are sent to
+    private final ConnectionCache connections;
+    // Threads reading accepted connections, kept apart from the pool so they cannot starve sending
+    private final ExecutorService readers;
+    // Accepted connections still being read, closed on stop()
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    // Completed events, fed by the pool as well as the reader threads
+    private final BlockingQueue<Future<Event>> completed = new LinkedBlockingQueue<>();
+    private final long idleTimeoutMillis;
 
     private boolean listening;
 
@@ -36,14 +61,29 @@ public class Messenger
      * @param nThreadsForMessaging the number of threads to be reserved for sending/receiving messages
      */
     public Messenger(int listeningPort, int nThreadsForMessaging)
+    {
+        this(listeningPort, nThreadsForMessaging, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a new instance as {@link #Messenger(int, int)} does, closing connections that have not carried a
+     * message for {@code idleTimeoutMillis}
+     * @param listeningPort the port to listen on for incoming connections
+     * @param nThreadsForMessaging the number of threads to be reserved for sending/receiving messages
+     * @param idleTimeoutMillis time after which an unused connection is closed
+     */
+    public Messenger(int listeningPort, int nThreadsForMessaging, long idleTimeoutMillis)
     {
         if (nThreadsForMessaging < 1)
             throw new IllegalArgumentException("Number of threads passed to Messenger must be >= 1");
         // One extra thread for listening
         this.executorService = Executors.newFixedThreadPool(nThreadsForMessaging + 1);
-        this.executorCompletionService = new ExecutorCompletionService<>(executorService);
+        this.executorCompletionService = new ExecutorCompletionService<>(executorService, completed);
         this.listener = new Listener(listeningPort);
         this.listening = false;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.connections = new ConnectionCache(idleTimeoutMillis);
+        this.readers = newReaderPool();
     }
 
     public Messenger(int nThreadsForSending)
@@ -51,9 +91,21 @@ public class Messenger
         if (nThreadsForSending < 1)
             throw new IllegalArgumentException("Number of threads passed to Messenger must be >= 1");
         this.executorService = Executors.newFixedThreadPool(nThreadsForSending);
-        this.executorCompletionService = new ExecutorCompletionService<>(executorService);
+        this.executorCompletionService = new ExecutorCompletionService<>(executorService, completed);
         this.listener = null;
         this.listening = false;
+        this.idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+        this.connections = new ConnectionCache(idleTimeoutMillis);
+        this.readers = newReaderPool();
+    }
+
+    private static ExecutorService newReaderPool()
+    {
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "Messenger-reader");
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     /**
@@ -62,12 +114,15 @@ public class Messenger
      * @param destination IP Address of the destination
      * @return {@link MessageSent} event that may wrap an {@link IOException} on failure
      */
-    private static MessageSent trySend(Message msg, InetSocketAddress destination)
+    private MessageSent trySend(Message msg, InetSocketAddress destination)
     {
         MessageSent ev = new MessageSent(msg, destination);
         try
         {
-            Sender.send(msg, destination);
+            if (msg instanceof FileMessage && ((FileMessage) msg).getFile() != null)
+                FileTransfer.send(Collections.singletonList((FileMessage) msg), destination);
+            else
+                connections.send(msg, destination);
         }
         catch (IOException ex)
         {
@@ -97,22 +152,94 @@ public class Messenger
     }
 
     /**
-     * Synchronously receives a message and wraps it into an {@link MessageReceived} event for use by thread pool
+     * Reads messages from an accepted connection until the remote end closes it, or it stays idle for twice the
+     * idle timeout, generating a {@link MessageReceived} event for each. A connection starting with
+     * {@link FileTransfer#MAGIC} carries files and is read by {@link FileTransfer}, any other one is an object
+     * stream. Errors other than the connection closing generate a {@link MessageReceived} event wrapping the
+     * exception and end the reading.
      * @param sock Connection to the source
-     * @return {@link MessageReceived} event that may wrap an {@link IOException} or {@link ClassNotFoundException} on failure
      */
-    private static MessageReceived tryReceive(Socket sock)
+    private void readConnection(Socket sock)
+    {
+        try (Socket s = sock)
+        {
+            s.setSoTimeout((int) Math.min(Integer.MAX_VALUE, 2 * idleTimeoutMillis));
+            // Read without buffering, so nothing past the first four bytes is taken from a file transfer
+            InputStream raw = s.getInputStream();
+            byte[] start = new byte[4];
+            new DataInputStream(raw).readFully(start);
+            if (ByteBuffer.wrap(start).getInt() == FileTransfer.MAGIC)
+            {
+                readFileTransfer(s);
+                return;
+            }
+
+            ObjectInputStream in = new ObjectInputStream(new SequenceInputStream(new ByteArrayInputStream(start), raw));
+            while (true)
+            {
+                MessageReceived ev = new MessageReceived(s);
+                try
+                {
+                    ev.setMessage((Message) in.readObject());
+                }
+                catch (EOFException | SocketTimeoutException ex)
+                {
+                    // Closed or abandoned by the sender
+                    return;
+                }
+                catch (IOException | ClassNotFoundException ex)
+                {
+                    if (!(ex instanceof SocketException && s.isClosed()))
+                    {
+                        ev.setException(ex);
+                        completed.add(CompletableFuture.completedFuture(ev));
+                    }
+                    return;
+                }
+                completed.add(CompletableFuture.completedFuture(ev));
+            }
+        }
+        catch (EOFException | SocketTimeoutException ex)
+        {
+            // Closed before sending a single message
+        }
+        catch (IOException ex)
+        {
+            if (!(ex instanceof SocketException && sock.isClosed()))
+            {
+                MessageReceived ev = new MessageReceived(sock);
+                ev.setException(ex);
+                completed.add(CompletableFuture.completedFuture(ev));
+            }
+        }
+        finally
+        {
+            inbound.remove(sock);
+        }
+    }
+
+    private void readFileTransfer(Socket sock)
     {
-        MessageReceived ev = new MessageReceived(sock);
         try
         {
-            ev.setMessage(Receiver.receive(sock));
+            // Lets a sender that vanished half way be noticed eventually, as reads of the contents have no timeout
+            sock.setKeepAlive(true);
+            FileTransfer.receive(sock, msg -> {
+                MessageReceived ev = new MessageReceived(sock);
+                ev.setMessage(msg);
+                completed.add(CompletableFuture.completedFuture(ev));
+            });
         }
-        catch (IOException | ClassNotFoundException e)
+        catch (IOException | ClassNotFoundException ex)
         {
-            ev.setException(e);
+            // Closing the socket on stop() interrupts the channel with an exception of its own
+            if (!sock.isClosed())
+            {
+                MessageReceived ev = new MessageReceived(sock);
+                ev.setException(ex);
+                completed.add(CompletableFuture.completedFuture(ev));
+            }
         }
-        return ev;
     }
 
     /**
@@ -142,7 +269,7 @@ public class Messenger
     public void send(Message msg, InetSocketAddress destination)
     {
         if (msg != null)
-            this.executorCompletionService.submit(() -> Messenger.trySend(msg, destination));
+            this.executorCompletionService.submit(() -> trySend(msg, destination));
         else
             LOGGER.log(Level.WARNING, "Ignored a request to send a null or NULL_PEER message");
     }
@@ -195,13 +322,31 @@ public class Messenger
     }
 
     /**
-     * Asynchronous request for receiving a message from source. This will generate a {@link MessageReceived}
-     * event in the future, whether successful or not.
+     * Asynchronous request for receiving the messages sent over an accepted connection. This will generate a
+     * {@link MessageReceived} event in the future for every message, and one wrapping the exception if reading
+     * fails for any reason other than the connection being closed.
      * @param sock Socket representing the connection to the source
      */
     public void receive(Socket sock)
     {
-        this.executorCompletionService.submit(() -> Messenger.tryReceive(sock));
+        inbound.add(sock);
+        try
+        {
+            readers.execute(() -> readConnection(sock));
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // Already stopped
+            inbound.remove(sock);
+            try
+            {
+                sock.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.FINE, "Unable to close a connection received after stop()");
+            }
+        }
     }
 
     /**
@@ -266,7 +411,7 @@ public class Messenger
      */
     public void stop()
     {
-        if (!listener.isClosed())
+        if (listener != null && !listener.isClosed())
         {
             try{
                 listener.close();
@@ -277,6 +422,19 @@ public class Messenger
             }
         }
         executorService.shutdown();
+        readers.shutdown();
+        connections.close();
+        for (Socket sock : inbound)
+        {
+            try
+            {
+                sock.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(Level.FINE, "Unable to close a received connection on stop()");
+            }
+        }
     }
 
     /**
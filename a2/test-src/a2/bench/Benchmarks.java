@@ -0,0 +1,27 @@
+package a2.bench;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the a2 micro-benchmarks and prints ops/s and allocation per operation for each of them.
+ * Pass benchmark group names ({@code routing}, {@code transfer}, {@code hash}, {@code store}) to run only those; with no arguments all run.
+ *
+ * Run with: run-a2/bench.sh [routing] [transfer] [hash] [store]
+ */
+public class Benchmarks
+{
+    public static void main(String[] args) throws Exception
+    {
+        List<String> groups = Arrays.asList(args);
+        Harness.printHeader();
+        if (groups.isEmpty() || groups.contains("routing"))
+            RoutingBenchmark.run();
+        if (groups.isEmpty() || groups.contains("transfer"))
+            TransferBenchmark.run();
+        if (groups.isEmpty() || groups.contains("hash"))
+            HashBenchmark.run();
+        if (groups.isEmpty() || groups.contains("store"))
+            StoreBenchmark.run();
+    }
+}
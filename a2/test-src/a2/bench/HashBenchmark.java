@@ -0,0 +1,70 @@
+package a2.bench;
+
+import java.util.SplittableRandom;
+
+import a2.hash.CRC16;
+
+/**
+ * Measures hashing file contents with {@link CRC16} as {@code DataItem} does, in updates of {@value #BUFFER_BYTES}
+ * bytes:
+ * <ul>
+ * <li>{@code bitwise}: the previous implementation, shifting each byte in one bit at a time</li>
+ * <li>{@code table}: {@link CRC16}, a table lookup per byte</li>
+ * </ul>
+ * One operation is one MiB, so the ops/s column reads as MiB/s.
+ */
+final class HashBenchmark
+{
+    private static final int MIB = 1 << 20;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    // Results are published here so the JIT cannot optimise the hashing away
+    static volatile Object sink;
+    static volatile int intSink;
+
+    private HashBenchmark() {}
+
+    private static void hashTable(byte[] buffer, int mib)
+    {
+        CRC16 crc16 = new CRC16();
+        for (int i = 0; i < mib * (MIB / BUFFER_BYTES); i++)
+            crc16.update(buffer, 0, buffer.length);
+        sink = crc16.getValue();
+    }
+
+    private static void hashBitwise(byte[] buffer, int mib)
+    {
+        int value = 0;
+        for (int i = 0; i < mib * (MIB / BUFFER_BYTES); i++)
+            for (byte x : buffer)
+                value = updateBitwise(value, x);
+        intSink = value;
+    }
+
+    // The loop of sun.misc.CRC16.update that CRC16 used to run for every byte
+    private static int updateBitwise(int value, byte aByte)
+    {
+        int a = aByte;
+        for (int count = 7; count >= 0; count--)
+        {
+            a = a << 1;
+            int b = (a >>> 8) & 1;
+            if ((value & 0x8000) != 0)
+                value = ((value << 1) + b) ^ 0x1021;
+            else
+                value = (value << 1) + b;
+        }
+        return value & 0xffff;
+    }
+
+    static void run() throws Exception
+    {
+        byte[] buffer = new byte[BUFFER_BYTES];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < buffer.length; i++)
+            buffer[i] = (byte) random.nextInt();
+
+        Harness.measure("hash.crc16.bitwise", 8, ops -> hashBitwise(buffer, ops));
+        Harness.measure("hash.crc16.table", 64, ops -> hashTable(buffer, ops));
+    }
+}
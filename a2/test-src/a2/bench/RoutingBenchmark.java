@@ -0,0 +1,129 @@
+package a2.bench;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import a2.chord.peer.ID;
+
+/**
+ * Measures the {@link ID} arithmetic a peer performs while routing, on rings of 16, 64 and 160 bit identifiers:
+ * <ul>
+ * <li>{@code route}: picks the closest finger preceding a random key, scanning the fingers from the top as
+ * {@code Peer.getClosestNodePrecedingId} does</li>
+ * <li>{@code update}: walks the fingers above a newly learnt successor as {@code FingerTable.setPeerInfo} does</li>
+ * <li>{@code finger}: computes the start of every finger as {@code FingerTable} does on creation</li>
+ * </ul>
+ * Every ring has {@value #PEERS} peers with random identifiers, and the fingers point at their true successors.
+ */
+final class RoutingBenchmark
+{
+    private static final int PEERS = 64;
+    private static final int KEYS = 4096;
+    private static final int OPS = 4000000;
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    // Results are published here so the JIT cannot optimise the routing away
+    static volatile ID sink;
+    static volatile int countSink;
+
+    private RoutingBenchmark() {}
+
+    /**
+     * A node's view of the ring: its own identifier and the peer at each of its fingers
+     */
+    private static final class Ring
+    {
+        final ID own;
+        final ID[] fingers;
+        final ID[] succOfFinger;
+        final ID[] keys;
+
+        Ring(int size, long seed)
+        {
+            SplittableRandom random = new SplittableRandom(seed);
+            ID[] peers = new ID[PEERS];
+            for (int i = 0; i < PEERS; i++)
+                peers[i] = randomID(random, size);
+            Arrays.sort(peers);
+
+            own = peers[0];
+            fingers = new ID[own.sizeInBits()];
+            succOfFinger = new ID[own.sizeInBits()];
+            for (int k = 0; k < fingers.length; k++)
+            {
+                fingers[k] = own.addModulo(TWO.pow(k));
+                succOfFinger[k] = successor(peers, fingers[k]);
+            }
+            keys = new ID[KEYS];
+            for (int i = 0; i < KEYS; i++)
+                keys[i] = randomID(random, size);
+        }
+
+        private static ID randomID(SplittableRandom random, int size)
+        {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++)
+                bytes[i] = (byte) random.nextInt();
+            return new ID(new BigInteger(1, bytes), size);
+        }
+
+        private static ID successor(ID[] sortedPeers, ID id)
+        {
+            for (ID p : sortedPeers)
+                if (p.compareTo(id) >= 0)
+                    return p;
+            return sortedPeers[0];
+        }
+    }
+
+    private static ID route(Ring ring, ID key)
+    {
+        for (int k = ring.succOfFinger.length - 1; k >= 0; k--)
+            if (ring.succOfFinger[k].inInterval(ring.own, key))
+                return ring.succOfFinger[k];
+        return ring.own;
+    }
+
+    private static void routeAll(Ring ring, int ops)
+    {
+        ID last = null;
+        for (int i = 0; i < ops; i++)
+            last = route(ring, ring.keys[i & (KEYS - 1)]);
+        sink = last;
+    }
+
+    private static void updateAll(Ring ring, int ops)
+    {
+        int updated = 0;
+        for (int i = 0; i < ops; i++)
+        {
+            ID id = ring.keys[i & (KEYS - 1)];
+            for (ID finger : ring.fingers)
+                if (finger.inInterval(ring.own, id) || finger.compareTo(id) == 0)
+                    updated++;
+        }
+        countSink = updated;
+    }
+
+    private static void computeFingers(Ring ring, int ops)
+    {
+        ID last = null;
+        for (int i = 0; i < ops; i++)
+            last = ring.own.addModulo(TWO.pow(i % ring.fingers.length));
+        sink = last;
+    }
+
+    static void run() throws Exception
+    {
+        for (int size : new int[] {2, 8, 20})
+        {
+            Ring ring = new Ring(size, 42);
+            int bits = size * Byte.SIZE;
+            // Updates walk the whole table per operation, so fewer of them fit in the same time
+            Harness.measure("routing." + bits + ".route", OPS, ops -> routeAll(ring, ops));
+            Harness.measure("routing." + bits + ".update", OPS / bits, ops -> updateAll(ring, ops));
+            Harness.measure("routing." + bits + ".finger", OPS, ops -> computeFingers(ring, ops));
+        }
+    }
+}
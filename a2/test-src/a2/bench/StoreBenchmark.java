@@ -0,0 +1,108 @@
+package a2.bench;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import a2.chord.peer.ID;
+import a2.chord.peer.messages.DataItem;
+
+/**
+ * Measures picking the data items to hand over to a new predecessor on a peer holding {@value #ITEMS} of them
+ * under 64 bit identifiers, the new predecessor taking 1/{@value #PEERS} of the ring:
+ * <ul>
+ * <li>{@code scan}: the items in a {@link HashMap}, each one checked with {@link ID#inInterval}, as
+ * {@code Peer} used to</li>
+ * <li>{@code range}: the items in a {@link ConcurrentSkipListMap}, the interval read off its range views as
+ * {@code Peer.valuesInInterval} does</li>
+ * </ul>
+ * Half of the intervals wrap around zero. One operation is one handoff.
+ */
+final class StoreBenchmark
+{
+    private static final int ITEMS = 200000;
+    private static final int PEERS = 64;
+    private static final int HANDOFFS = 64;
+    private static final int SIZE = 8;
+
+    // Results are published here so the JIT cannot optimise the selection away
+    static volatile int countSink;
+
+    private StoreBenchmark() {}
+
+    private static ID randomID(SplittableRandom random)
+    {
+        byte[] bytes = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            bytes[i] = (byte) random.nextInt();
+        return new ID(new BigInteger(1, bytes), SIZE);
+    }
+
+    private static int scan(Map<ID, DataItem> stored, ID own, ID newNode)
+    {
+        List<DataItem> handoff = new ArrayList<>();
+        for (DataItem d : stored.values())
+            if (d.getID().inInterval(own, newNode) || d.getID().compareTo(newNode) == 0)
+                handoff.add(d);
+        return handoff.size();
+    }
+
+    private static int range(NavigableMap<ID, DataItem> stored, ID own, ID newNode)
+    {
+        List<DataItem> handoff;
+        if (own.compareTo(newNode) < 0)
+        {
+            handoff = new ArrayList<>(stored.subMap(own, false, newNode, true).values());
+        }
+        else
+        {
+            handoff = new ArrayList<>(stored.tailMap(own, false).values());
+            handoff.addAll(stored.headMap(newNode, true).values());
+        }
+        return handoff.size();
+    }
+
+    static void run() throws Exception
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        Map<ID, DataItem> hashed = new HashMap<>();
+        NavigableMap<ID, DataItem> ordered = new ConcurrentSkipListMap<>();
+        for (int i = 0; i < ITEMS; i++)
+        {
+            ID id = randomID(random);
+            DataItem d = new DataItem("item" + i, id);
+            hashed.put(id, d);
+            ordered.put(id, d);
+        }
+
+        // Own identifier and that of the joining predecessor, 1/PEERS of the ring apart, every other pair across zero
+        BigInteger ring = BigInteger.ONE.shiftLeft(SIZE * 8);
+        BigInteger share = ring.divide(BigInteger.valueOf(PEERS));
+        ID[] owns = new ID[HANDOFFS];
+        ID[] newNodes = new ID[HANDOFFS];
+        for (int i = 0; i < HANDOFFS; i++)
+        {
+            ID own = i % 2 == 0 ? randomID(random) : new ID(ring.subtract(share.shiftRight(1)), SIZE);
+            owns[i] = own;
+            newNodes[i] = own.addModulo(share);
+        }
+
+        Harness.measure("store.handoff.scan", HANDOFFS, ops -> {
+            int count = 0;
+            for (int i = 0; i < ops; i++)
+                count += scan(hashed, owns[i % HANDOFFS], newNodes[i % HANDOFFS]);
+            countSink = count;
+        });
+        Harness.measure("store.handoff.range", HANDOFFS, ops -> {
+            int count = 0;
+            for (int i = 0; i < ops; i++)
+                count += range(ordered, owns[i % HANDOFFS], newNodes[i % HANDOFFS]);
+            countSink = count;
+        });
+    }
+}
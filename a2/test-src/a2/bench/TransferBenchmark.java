@@ -0,0 +1,146 @@
+package a2.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import a2.chord.peer.messages.DataItem;
+import a2.transport.ConnectionCache;
+import a2.transport.FileTransfer;
+import a2.transport.messenger.ConnectionReceived;
+import a2.transport.messenger.Event;
+import a2.transport.messenger.MessageReceived;
+import a2.transport.messenger.Messenger;
+
+/**
+ * Measures storing a {@value #FILE_MIB} MiB {@link DataItem} on a peer over loopback, until the receiving
+ * {@link Messenger} has written it out and generated its event:
+ * <ul>
+ * <li>{@code objectstream}: the item written into a cached object stream, its contents copied in and out
+ * through heap buffers</li>
+ * <li>{@code filetransfer}: the item sent with {@link FileTransfer}, its contents moved between file and socket
+ * by the channels</li>
+ * </ul>
+ * One operation is one MiB, so the ops/s column reads as MiB/s.
+ */
+final class TransferBenchmark
+{
+    private static final int FILE_MIB = 16;
+    private static final int MIB = 1 << 20;
+
+    private TransferBenchmark() {}
+
+    static void run() throws Exception
+    {
+        File dir = Files.createTempDirectory("a2-bench").toFile();
+        File source = new File(dir, "transfer-bench.bin");
+        writeRandom(source, FILE_MIB);
+        DataItem item = new DataItem(source.getPath());
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), freePort());
+        Messenger receiver = new Messenger(address.getPort(), 2);
+        Semaphore received = new Semaphore(0);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread events = new Thread(() -> receive(receiver, received, failure), "TransferBenchmark-receiver");
+        receiver.listen();
+        events.start();
+
+        ConnectionCache cache = new ConnectionCache(Messenger.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        try
+        {
+            Harness.measure("transfer.objectstream", FILE_MIB, ops -> {
+                cache.send(item, address);
+                awaitReceived(received, failure);
+            });
+            Harness.measure("transfer.filetransfer", FILE_MIB, ops -> {
+                FileTransfer.send(Collections.singletonList(item), address);
+                awaitReceived(received, failure);
+            });
+        }
+        finally
+        {
+            cache.close();
+            events.interrupt();
+            receiver.stop();
+            source.delete();
+            dir.delete();
+        }
+    }
+
+    private static void receive(Messenger receiver, Semaphore received, AtomicReference<Exception> failure)
+    {
+        while (true)
+        {
+            Event ev;
+            try
+            {
+                ev = receiver.getEvent();
+            }
+            catch (Exception ex)
+            {
+                failure.set(ex);
+                received.release();
+                continue;
+            }
+
+            switch (ev.getEventType())
+            {
+                case INTERRUPT_RECEIVED:
+                    return;
+                case CONNECTION_RECEIVED:
+                    receiver.receive(((ConnectionReceived) ev).getSocket());
+                    break;
+                case MESSAGE_RECEIVED:
+                    if (ev.causedException())
+                        failure.set(ev.getException());
+                    else
+                        ((DataItem) ((MessageReceived) ev).getMessage()).delete();
+                    received.release();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void awaitReceived(Semaphore received, AtomicReference<Exception> failure) throws Exception
+    {
+        if (!received.tryAcquire(60, TimeUnit.SECONDS))
+            throw new IllegalStateException("File was not received within 60 seconds");
+        Exception ex = failure.getAndSet(null);
+        if (ex != null)
+            throw ex;
+    }
+
+    private static void writeRandom(File file, int mib) throws IOException
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        byte[] chunk = new byte[MIB];
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw"))
+        {
+            for (int i = 0; i < mib; i++)
+            {
+                for (int j = 0; j < chunk.length; j++)
+                    chunk[j] = (byte) random.nextInt();
+                out.write(chunk);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException
+    {
+        try (ServerSocket s = new ServerSocket(0))
+        {
+            return s.getLocalPort();
+        }
+    }
+}
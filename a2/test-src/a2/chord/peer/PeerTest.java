@@ -0,0 +1,80 @@
+package a2.chord.peer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+public class PeerTest
+{
+    private static final int SIZE = 2;
+
+    private static ID id(int value)
+    {
+        return new ID(String.format("%04x", value), SIZE);
+    }
+
+    private static NavigableMap<ID, Integer> stored(int... values)
+    {
+        NavigableMap<ID, Integer> map = new TreeMap<>();
+        for (int v : values)
+            map.put(id(v), v);
+        return map;
+    }
+
+    // What the handoffs selected before the items were kept in order: a scan over every item
+    private static List<Integer> scan(NavigableMap<ID, Integer> map, ID end1, ID end2)
+    {
+        List<Integer> values = new ArrayList<>();
+        for (NavigableMap.Entry<ID, Integer> e : map.entrySet())
+            if (e.getKey().inInterval(end1, end2) || e.getKey().compareTo(end2) == 0)
+                values.add(e.getValue());
+        return values;
+    }
+
+    @Test
+    public void selectsTheIntervalExcludingItsStart()
+    {
+        NavigableMap<ID, Integer> map = stored(0x0000, 0x1000, 0x2000, 0x3000, 0xffff);
+        Assert.assertEquals(Arrays.asList(0x2000, 0x3000), new ArrayList<>(Peer.valuesInInterval(map, id(0x1000), id(0x3000))));
+        Assert.assertEquals(Collections.emptyList(), new ArrayList<>(Peer.valuesInInterval(map, id(0x3000), id(0x3001))));
+    }
+
+    @Test
+    public void wrapsAroundZero()
+    {
+        NavigableMap<ID, Integer> map = stored(0x0000, 0x1000, 0x2000, 0x3000, 0xffff);
+        Assert.assertEquals(Arrays.asList(0xffff, 0x0000, 0x1000), new ArrayList<>(Peer.valuesInInterval(map, id(0x3000), id(0x1000))));
+        // Equal endpoints are the whole ring, as for a peer that is its own predecessor
+        Assert.assertEquals(Arrays.asList(0x3000, 0xffff, 0x0000, 0x1000, 0x2000), new ArrayList<>(Peer.valuesInInterval(map, id(0x2000), id(0x2000))));
+    }
+
+    @Test
+    public void matchesAScanOverAllItems()
+    {
+        SplittableRandom random = new SplittableRandom(11);
+        NavigableMap<ID, Integer> map = new TreeMap<>();
+        for (int i = 0; i < 500; i++)
+        {
+            int v = random.nextInt(0x10000);
+            map.put(id(v), v);
+        }
+
+        for (int n = 0; n < 500; n++)
+        {
+            ID end1 = id(random.nextInt(0x10000));
+            ID end2 = n % 50 == 0 ? end1 : id(random.nextInt(0x10000));
+            List<Integer> expected = scan(map, end1, end2);
+            List<Integer> actual = new ArrayList<>(Peer.valuesInInterval(map, end1, end2));
+            expected.sort(null);
+            actual.sort(null);
+            Assert.assertEquals(expected, actual);
+        }
+    }
+}
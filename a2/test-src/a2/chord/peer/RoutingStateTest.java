@@ -0,0 +1,195 @@
+package a2.chord.peer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RoutingStateTest
+{
+    private static final int SIZE = 2;
+    private static final ID OWN_ID = new ID("8000", SIZE);
+    private static final int WRITERS = 4;
+    private static final int UPDATES_PER_WRITER = 20000;
+    private static final int READERS = 2;
+    private static final int SUCCESSORS = 3;
+
+    private static PeerInfo peer(ID id, int port)
+    {
+        return new PeerInfo(id, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), "peer" + port);
+    }
+
+    @Test
+    public void lookupsDoNotWaitForAnUpdateInFlight() throws InterruptedException
+    {
+        AtomicReference<RoutingState> state = new AtomicReference<>(new RoutingState(OWN_ID, SUCCESSORS));
+        PeerInfo succ = peer(new ID("9000", SIZE), 1);
+        RoutingState.update(state, s -> s.withSuccessor(succ).asJoined());
+
+        // Hold an update half way through, as a slow stabilization step would
+        CountDownLatch updating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PeerInfo newSucc = peer(new ID("8800", SIZE), 2);
+        Thread writer = new Thread(() -> RoutingState.update(state, s -> {
+            updating.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return s.withSuccessor(newSucc);
+        }));
+        writer.start();
+        Assert.assertTrue(updating.await(5, TimeUnit.SECONDS));
+
+        // Routing keeps working from the state before the update
+        ID key = new ID("a000", SIZE);
+        Assert.assertSame(succ, state.get().getFingerTable().getClosestPrecedingPeer(key));
+
+        release.countDown();
+        writer.join(5000);
+        Assert.assertSame(newSucc, state.get().getSuccessor());
+    }
+
+    @Test
+    public void concurrentUpdatesAreNeitherTornNorLost() throws InterruptedException
+    {
+        AtomicReference<RoutingState> state = new AtomicReference<>(new RoutingState(OWN_ID, SUCCESSORS));
+        FingerTable empty = state.get().getFingerTable();
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicLong reads = new AtomicLong();
+        List<Throwable> failures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        // Each writer owns one finger above the successor. A peer whose ID is exactly the start of that finger
+        // updates only that finger, so the last peer each writer sets must survive every other writer's updates.
+        PeerInfo[][] written = new PeerInfo[WRITERS][UPDATES_PER_WRITER];
+        for (int w = 0; w < WRITERS; w++)
+        {
+            ID finger = empty.getFinger(w + 1);
+            for (int i = 0; i < UPDATES_PER_WRITER; i++)
+                written[w][i] = peer(finger, 10000 + i);
+        }
+        for (int w = 0; w < WRITERS; w++)
+        {
+            int writer = w;
+            threads.add(new Thread(() -> {
+                for (PeerInfo p : written[writer])
+                    RoutingState.update(state, s -> s.withFinger(p.getID(), p));
+            }));
+        }
+
+        // Stabilization sets successor and predecessor together, so every state read has them equal. The successor
+        // is right next to this peer, so it takes over no finger but the first.
+        ID next = OWN_ID.addModulo(BigInteger.ONE);
+        threads.add(new Thread(() -> {
+            for (int i = 1; i <= UPDATES_PER_WRITER; i++)
+            {
+                PeerInfo p = peer(next, i);
+                RoutingState.update(state, s -> s.withSuccessor(p).withPredecessor(p));
+            }
+        }));
+
+        for (int r = 0; r < READERS; r++)
+        {
+            threads.add(new Thread(() -> {
+                try
+                {
+                    while (!done.get())
+                    {
+                        RoutingState s = state.get();
+                        Assert.assertSame(s.getPredecessor(), s.getSuccessor());
+                        Assert.assertNotNull(s.getFingerTable().getClosestPrecedingPeer(OWN_ID.addModulo(BigInteger.TEN)));
+                        reads.incrementAndGet();
+                    }
+                }
+                catch (Throwable t)
+                {
+                    synchronized (failures)
+                    {
+                        failures.add(t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads.subList(0, WRITERS + 1))
+            t.join();
+        done.set(true);
+        for (Thread t : threads.subList(WRITERS + 1, threads.size()))
+            t.join();
+
+        Assert.assertEquals(new ArrayList<Throwable>(), failures);
+        Assert.assertTrue(reads.get() > 0);
+        for (int w = 0; w < WRITERS; w++)
+            Assert.assertSame(written[w][UPDATES_PER_WRITER - 1], state.get().getFingerTable().getPeerInfo(w + 1));
+    }
+
+    @Test
+    public void successorListFollowsStabilizationAndFailsOver()
+    {
+        PeerInfo self = peer(OWN_ID, 0);
+        PeerInfo a = peer(new ID("9000", SIZE), 1);
+        PeerInfo b = peer(new ID("a000", SIZE), 2);
+        PeerInfo c = peer(new ID("b000", SIZE), 3);
+        PeerInfo d = peer(new ID("c000", SIZE), 4);
+        RoutingState s = new RoutingState(OWN_ID, SUCCESSORS).withSuccessor(a).asJoined();
+
+        // The successor reports itself followed by its own successors; the list wraps around to this peer
+        s = s.withSuccessorsOfSuccessor(Arrays.asList(a, b, c, d));
+        Assert.assertEquals(Arrays.asList(a, b, c), s.getSuccessors());
+        Assert.assertSame(s, s.withSuccessorsOfSuccessor(Arrays.asList(a, b, c, self)));
+
+        // A peer is routed around as soon as the successor dies, and the next one covers the keys it preceded
+        s = s.withoutPeer(a.getID(), self);
+        Assert.assertSame(b, s.getSuccessor());
+        Assert.assertEquals(Arrays.asList(b, c), s.getSuccessors());
+        Assert.assertSame(b, s.getClosestPrecedingPeer(new ID("a800", SIZE)));
+        Assert.assertSame(c, s.getClosestPrecedingPeer(new ID("b800", SIZE)));
+
+        // With every successor gone the peer points at itself until stabilization finds another
+        s = s.withoutPeer(b.getID(), self).withoutPeer(c.getID(), self);
+        Assert.assertSame(self, s.getSuccessor());
+        Assert.assertSame(s, s.withoutPeer(d.getID(), self));
+    }
+
+    @Test
+    public void iterativeCandidatesIncludeTheSuccessorList()
+    {
+        PeerInfo self = peer(OWN_ID, 0);
+        PeerInfo a = peer(new ID("9000", SIZE), 1);
+        PeerInfo b = peer(new ID("a000", SIZE), 2);
+        PeerInfo c = peer(new ID("b000", SIZE), 3);
+        PeerInfo far = peer(new ID("e000", SIZE), 4);
+        RoutingState s = new RoutingState(OWN_ID, SUCCESSORS).withSuccessor(a).asJoined()
+                .withSuccessorsOfSuccessor(Arrays.asList(a, b, c))
+                .withFinger(new ID("c000", SIZE), far);
+
+        // Fingers and successors merged, closest to the ID first
+        ID key = new ID("f000", SIZE);
+        Assert.assertEquals(Arrays.asList(far, c, b), s.getClosestPrecedingPeers(key, 3));
+
+        // Once the far finger has died the fingers only know the successor; the rest of the way is in the list
+        s = s.withoutPeer(far.getID(), self);
+        Assert.assertEquals(Arrays.asList(a), s.getFingerTable().getClosestPrecedingPeers(key, 3));
+        Assert.assertEquals(Arrays.asList(c, b, a), s.getClosestPrecedingPeers(key, 3));
+        Assert.assertEquals(Arrays.asList(c, b), s.getClosestPrecedingPeers(key, 2));
+        Assert.assertEquals(Arrays.asList(b, a), s.getClosestPrecedingPeers(new ID("a800", SIZE), 3));
+        Assert.assertTrue(s.getClosestPrecedingPeers(new ID("8800", SIZE), 3).isEmpty());
+    }
+}
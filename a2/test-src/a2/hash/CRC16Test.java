@@ -0,0 +1,82 @@
+package a2.hash;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class CRC16Test
+{
+    private static String crc(byte[] b, int off, int len)
+    {
+        CRC16 crc16 = new CRC16();
+        crc16.update(b, off, len);
+        return crc16.getValue().toString();
+    }
+
+    private static String crc(String s)
+    {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        return crc(b, 0, b.length);
+    }
+
+    @Test
+    public void hashesWholeArraysAsBefore()
+    {
+        // Values of the bit-at-a-time implementation, which peers have stored data under
+        Assert.assertEquals("beef", crc("123456789"));
+        Assert.assertEquals("0061", crc("a"));
+        Assert.assertEquals("4d5d", crc("The quick brown fox jumps over the lazy dog"));
+        Assert.assertEquals("0000", crc(""));
+
+        CRC16 crc16 = new CRC16();
+        crc16.update(0x12345678);
+        Assert.assertEquals("45be", crc16.getValue().toString());
+
+        byte[] b = new byte[1000];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte) (i * 31 + 7);
+        Assert.assertEquals("7469", crc(b, 0, b.length));
+    }
+
+    @Test
+    public void matchesTheBitwiseUpdateOnRandomInput()
+    {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int n = 0; n < 200; n++)
+        {
+            byte[] b = new byte[random.nextInt(2048)];
+            for (int i = 0; i < b.length; i++)
+                b[i] = (byte) random.nextInt();
+
+            int expected = 0;
+            for (byte x : b)
+                expected = CRC16.updateBitwise(expected, x);
+            Assert.assertEquals(String.format("%04x", expected), crc(b, 0, b.length));
+        }
+    }
+
+    @Test
+    public void hashesOnlyTheGivenRange()
+    {
+        byte[] data = "123456789".getBytes(StandardCharsets.US_ASCII);
+        // A reused buffer whose tail holds stale bytes from an earlier, longer read
+        byte[] buffer = Arrays.copyOf("xx123456789stale".getBytes(StandardCharsets.US_ASCII), 64);
+        Assert.assertEquals(crc(data, 0, data.length), crc(buffer, 2, data.length));
+
+        // Updating in pieces gives the same value as all at once
+        CRC16 crc16 = new CRC16();
+        crc16.update(data, 0, 4);
+        crc16.update(data, 4, 0);
+        crc16.update(data, 4, 5);
+        Assert.assertEquals("beef", crc16.getValue().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsARangeOutsideTheArray()
+    {
+        new CRC16().update(new byte[8], 4, 5);
+    }
+}